@@ -0,0 +1,122 @@
+package com.project;
+
+import com.project.bench.BenchController;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixtures shared by the JMH benchmarks: the {@link BenchController} route, its payloads, an executor that
+ * runs handlers on the calling thread and a channel that discards everything written to it.
+ */
+final class BenchmarkSupport {
+    static final String ROUTE = BenchController.ROUTE;
+    static final WebSocketSessionManager SESSION_MANAGER = new WebSocketSessionManager();
+
+    private static boolean registered;
+
+    private BenchmarkSupport() {
+    }
+
+    static synchronized void registerController() {
+        if (!registered) {
+            DIContainer.registerSingleton(WebSocketSessionManager.class, SESSION_MANAGER);
+            WebSocketRouteRegistry.registerController(new BenchController());
+            registered = true;
+        }
+    }
+
+    static BenchController.Payload payload(int textLength) {
+        BenchController.Payload payload = new BenchController.Payload();
+        payload.text = "x".repeat(textLength);
+        payload.timestamp = System.currentTimeMillis();
+        payload.tags = List.of("alpha", "beta", "gamma");
+        return payload;
+    }
+
+    static void drain(WebSocketSession session) {
+        WebSocketSession.MessageWrapper message;
+        while ((message = session.poll()) != null) {
+            message.release();
+        }
+    }
+
+    static class DirectExecutorService extends AbstractExecutorService {
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+
+    static class NullChannel implements GatheringByteChannel {
+        private long written;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                total += srcs[i].remaining();
+                srcs[i].position(srcs[i].limit());
+            }
+            written += total;
+            return total;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int remaining = src.remaining();
+            src.position(src.limit());
+            written += remaining;
+            return remaining;
+        }
+
+        long getWritten() {
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
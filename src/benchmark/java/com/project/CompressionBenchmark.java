@@ -0,0 +1,139 @@
+package com.project;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * permessage-deflate over a stream of distinct chat envelopes ({@code {"command","type","message"}}) as one
+ * connection would send them. The pool is larger than the 32KB window, so context takeover only finds the
+ * repetition real traffic has rather than earlier copies of the same message. The score is the CPU cost per
+ * message; the {@code compressedBytes} and {@code uncompressedBytes} counters give the compression ratio for
+ * each combination of message size, context takeover and deflate level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class CompressionBenchmark {
+    private static final int MESSAGES = 64;
+    private static final int MIN_POOL_BYTES = 4 * 32 * 1024;
+    private static final String[] SENDERS = {"alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi"};
+    private static final String[] WORDS = {
+            "the", "build", "is", "green", "again", "can", "you", "review", "my", "change", "before", "lunch",
+            "deploy", "failed", "on", "staging", "rollback", "done", "thanks", "looks", "good", "to", "me",
+            "meeting", "moved", "tomorrow", "ticket", "updated", "with", "logs", "from", "last", "night"
+    };
+
+    @Param({"32", "512", "4096"})
+    public int textLength;
+
+    @Param({"true", "false"})
+    public boolean contextTakeover;
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    private List<byte[]> envelopes;
+    private int next;
+    private PerMessageDeflate deflate;
+    private ByteBuffer payload;
+    private ByteBuffer output;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bytes {
+        public long compressedBytes;
+        public long uncompressedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            compressedBytes = 0;
+            uncompressedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        EnvelopeEncoder encoder = new EnvelopeEncoder(new ObjectMapper());
+        envelopes = new ArrayList<>();
+        int longest = 0;
+        long total = 0;
+        while (envelopes.size() < MESSAGES || total < MIN_POOL_BYTES) {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("roomId", "room-" + random.nextInt(4));
+            message.put("sender", SENDERS[random.nextInt(SENDERS.length)]);
+            message.put("sentAt", 1_760_000_000_000L + random.nextInt(86_400_000));
+            message.put("text", text(random));
+            byte[] envelope = encoder.encodeText("message", message);
+            envelopes.add(envelope);
+            longest = Math.max(longest, envelope.length);
+            total += envelope.length;
+        }
+
+        deflate = new PerMessageDeflate(!contextTakeover, false, 15, 0, level);
+        payload = ByteBuffer.allocate(longest);
+        output = ByteBuffer.allocate(PerMessageDeflate.maxCompressedLength(longest));
+    }
+
+    @TearDown
+    public void tearDown() {
+        deflate.releaseDeflater();
+    }
+
+    private String text(Random random) {
+        StringBuilder text = new StringBuilder(textLength + 16);
+        while (text.length() < textLength) {
+            if (!text.isEmpty()) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.setLength(textLength);
+        return text.toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long compress(Bytes bytes) throws IOException {
+        long compressed = 0;
+        long uncompressed = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            byte[] envelope = envelopes.get(next);
+            next = next + 1 == envelopes.size() ? 0 : next + 1;
+            payload.clear();
+            payload.put(envelope).flip();
+            output.clear();
+            compressed += deflate.compress(null, payload, output);
+            uncompressed += envelope.length;
+        }
+        bytes.compressedBytes += compressed;
+        bytes.uncompressedBytes += uncompressed;
+        return compressed;
+    }
+}
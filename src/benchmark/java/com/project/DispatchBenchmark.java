@@ -0,0 +1,77 @@
+package com.project;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text frame dispatch: envelope parse, handler lookup, payload binding, handler invocation and the reply the
+ * handler enqueues. Handlers run on the calling thread so the numbers exclude executor hand-off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class DispatchBenchmark {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Param({"32", "1024"})
+    public int textLength;
+
+    private WebSocketSession session;
+    private WebSocketMessageDispatcher dispatcher;
+    private BenchmarkSupport.DirectExecutorService executor;
+    private byte[] objectFrame;
+    private byte[] stringFrame;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.registerController();
+        session = new WebSocketSession(Long.MAX_VALUE, WebSocketSession.OverflowPolicy.BLOCK, 0);
+        executor = new BenchmarkSupport.DirectExecutorService();
+        dispatcher = new WebSocketMessageDispatcher(BenchmarkSupport.ROUTE, session,
+                BenchmarkSupport.SESSION_MANAGER, executor, "bench");
+
+        objectFrame = objectMapper.writeValueAsBytes(Map.of(
+                "command", "echo", "type", "text", "message", BenchmarkSupport.payload(textLength)));
+        stringFrame = objectMapper.writeValueAsBytes(Map.of(
+                "command", "raw", "type", "text", "message", "x".repeat(textLength)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.close();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int dispatchObject() {
+        dispatcher.handleFrame(0x01, objectFrame, 0, objectFrame.length);
+        int queued = session.getQueuedMessages();
+        BenchmarkSupport.drain(session);
+        return queued;
+    }
+
+    @Benchmark
+    public int dispatchString() {
+        dispatcher.handleFrame(0x01, stringFrame, 0, stringFrame.length);
+        int queued = session.getQueuedMessages();
+        BenchmarkSupport.drain(session);
+        return queued;
+    }
+}
@@ -0,0 +1,78 @@
+package com.project;
+
+import com.project.bench.BenchController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one group send, through {@link MultiSessionWrapper} and through a topic publish (sharded above
+ * WS_TOPIC_FANOUT_SHARD_SIZE): how long the sender waits until the message is queued for every session.
+ * Sample mode reports the percentiles. The queues are drained between invocations, outside the measurement,
+ * as the writers would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class FanoutBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int sessionCount;
+
+    private final WebSocketSessionManager sessionManager = BenchmarkSupport.SESSION_MANAGER;
+    private final List<WebSocketSession> sessions = new ArrayList<>();
+    private final String topic = "bench-" + UUID.randomUUID();
+    private MultiSessionWrapper wrapper;
+    private BenchController.Payload payload;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < sessionCount; i++) {
+            WebSocketSession session = new WebSocketSession(Long.MAX_VALUE, WebSocketSession.OverflowPolicy.BLOCK, 0);
+            sessionManager.setCurrentSession(session);
+            sessionManager.subscribe(topic);
+            sessions.add(session);
+        }
+        sessionManager.setCurrentSession(null);
+        wrapper = new MultiSessionWrapper(sessions);
+        payload = BenchmarkSupport.payload(64);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessions.forEach(sessionManager::unregisterSession);
+        sessions.clear();
+    }
+
+    @TearDown(Level.Invocation)
+    public void drain() {
+        sessions.forEach(BenchmarkSupport::drain);
+    }
+
+    @Benchmark
+    public void multiSessionSend() {
+        wrapper.send("echo", payload);
+    }
+
+    @Benchmark
+    public void topicPublish() {
+        sessionManager.publish(topic, "echo", payload);
+    }
+}
@@ -0,0 +1,137 @@
+package com.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound frame decoding (read, unmask, split) and outbound frame encoding (header, gather write) for a batch
+ * of {@link #FRAMES} frames per operation; encoding runs with and without permessage-deflate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class FrameCodecBenchmark {
+    private static final int FRAMES = 16;
+
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    private byte[] inbound;
+    private byte[] payload;
+    private WebSocketFrameDecoder decoder;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        payload = new byte[payloadSize];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) ('a' + random.nextInt(8));
+        }
+
+        ByteBuffer frames = ByteBuffer.allocate(FRAMES * (payloadSize + 14));
+        for (int i = 0; i < FRAMES; i++) {
+            writeMaskedFrame(frames, payload, random.nextInt());
+        }
+        inbound = new byte[frames.position()];
+        frames.flip().get(inbound);
+
+        decoder = new WebSocketFrameDecoder();
+    }
+
+    @TearDown
+    public void tearDown() {
+        decoder.release();
+    }
+
+    @State(Scope.Thread)
+    public static class Outbound {
+        @Param({"false", "true"})
+        public boolean deflate;
+
+        private WebSocketFrameEncoder encoder;
+        private BenchmarkSupport.NullChannel channel;
+
+        @Setup
+        public void setup() {
+            encoder = new WebSocketFrameEncoder();
+            if (deflate) {
+                encoder.setDeflate(new PerMessageDeflate(false, false, 15, 256));
+            }
+            channel = new BenchmarkSupport.NullChannel();
+        }
+
+        @TearDown
+        public void tearDown() {
+            encoder.release();
+        }
+    }
+
+    private static void writeMaskedFrame(ByteBuffer out, byte[] payload, int mask) {
+        out.put((byte) 0x81);
+        if (payload.length <= 125) {
+            out.put((byte) (0x80 | payload.length));
+        } else if (payload.length <= 65535) {
+            out.put((byte) (0x80 | 126));
+            out.putShort((short) payload.length);
+        } else {
+            out.put((byte) (0x80 | 127));
+            out.putLong(payload.length);
+        }
+        out.putInt(mask);
+        for (int i = 0; i < payload.length; i++) {
+            out.put((byte) (payload[i] ^ (mask >>> (24 - 8 * (i & 3)))));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void readFrames(Blackhole blackhole) throws IOException {
+        int position = 0;
+        int decoded = 0;
+        while (decoded < FRAMES) {
+            ByteBuffer buffer = decoder.writableBuffer();
+            int length = Math.min(buffer.remaining(), inbound.length - position);
+            buffer.put(inbound, position, length);
+            position += length;
+
+            while (decoder.nextFrame()) {
+                blackhole.consume(decoder.getPayloadArray()[decoder.getPayloadOffset()]);
+                decoded++;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long writeFrames(Outbound outbound) throws IOException {
+        WebSocketFrameEncoder encoder = outbound.encoder;
+        for (int i = 0; i < FRAMES; i++) {
+            encoder.encode(WebSocketSession.MessageWrapper.text(payload));
+            if (!encoder.hasCapacity()) {
+                encoder.writeTo(outbound.channel);
+            }
+        }
+        encoder.writeTo(outbound.channel);
+        return outbound.channel.getWritten();
+    }
+}
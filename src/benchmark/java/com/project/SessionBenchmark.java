@@ -0,0 +1,72 @@
+package com.project;
+
+import com.project.bench.BenchController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound path of a single session: envelope serialization on {@code send}, and {@code poll} interleaving
+ * queued messages with the chunks of a file transfer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class SessionBenchmark {
+    private static final int MIXED_MESSAGES = 32;
+    private static final int MIXED_FILE_SIZE = 256 * 1024;
+
+    @Param({"json", "binary"})
+    public String protocol;
+
+    private WebSocketSession session;
+    private BenchController.Payload payload;
+    private byte[] file;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.registerController();
+        session = new WebSocketSession(Long.MAX_VALUE, WebSocketSession.OverflowPolicy.BLOCK, 0);
+        if (protocol.equals("binary")) {
+            session.useBinaryProtocol(WebSocketRouteRegistry.getCommandTable(BenchmarkSupport.ROUTE));
+            BenchmarkSupport.drain(session);
+        }
+        payload = BenchmarkSupport.payload(64);
+        file = new byte[MIXED_FILE_SIZE];
+    }
+
+    @Benchmark
+    public WebSocketSession.MessageWrapper send() {
+        session.send("echo", payload);
+        return session.poll();
+    }
+
+    @Benchmark
+    public int pollMixed() {
+        session.sendFile("raw", file, payload);
+        for (int i = 0; i < MIXED_MESSAGES; i++) {
+            session.send("echo", payload);
+        }
+
+        int polled = 0;
+        WebSocketSession.MessageWrapper message;
+        while ((message = session.poll()) != null) {
+            message.release();
+            polled++;
+        }
+        return polled;
+    }
+}
@@ -0,0 +1,92 @@
+package com.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Register/unregister churn against a session index that already holds {@link #registeredUsers} users,
+ * single-threaded and with four threads contending on the same index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class SessionManagerBenchmark {
+    @Param({"0", "100000"})
+    public int registeredUsers;
+
+    private final WebSocketSessionManager sessionManager = BenchmarkSupport.SESSION_MANAGER;
+    private final List<WebSocketSession> sessions = new ArrayList<>();
+    private final List<UUID> userIds = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < registeredUsers; i++) {
+            WebSocketSession session = new WebSocketSession();
+            UUID userId = randomUserId();
+            sessionManager.setCurrentSession(session);
+            sessionManager.registerSession(userId);
+            sessions.add(session);
+            userIds.add(userId);
+        }
+        sessionManager.setCurrentSession(null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessions.forEach(sessionManager::unregisterSession);
+        sessions.clear();
+        userIds.clear();
+    }
+
+    @Benchmark
+    public int churn() {
+        return registerAndUnregister();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int churnContended() {
+        return registerAndUnregister();
+    }
+
+    @Benchmark
+    public SessionSender lookup() {
+        if (userIds.isEmpty()) {
+            return sessionManager.otherSession(randomUserId());
+        }
+        return sessionManager.otherSession(userIds.get(ThreadLocalRandom.current().nextInt(userIds.size())));
+    }
+
+    private int registerAndUnregister() {
+        WebSocketSession session = new WebSocketSession();
+        sessionManager.setCurrentSession(session);
+        sessionManager.registerSession(randomUserId());
+        sessionManager.unregisterSession(session);
+        return sessionManager.getUserCount();
+    }
+
+    private static UUID randomUserId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+}
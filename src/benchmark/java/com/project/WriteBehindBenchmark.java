@@ -0,0 +1,89 @@
+package com.project;
+
+import org.jooq.TableField;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.jooq.impl.TableImpl;
+import org.jooq.impl.TableRecordImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained persist throughput of {@link WriteBehindWriter} against a sink that charges a fixed cost per
+ * batch (the commit) plus a smaller cost per row, so the effect of the batch size is visible without a
+ * database. The bounded queue turns a slow sink into back-pressure on the callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class WriteBehindBenchmark {
+    private static final long COMMIT_TOKENS = 20_000;
+    private static final long ROW_TOKENS = 200;
+
+    @Param({"1", "10", "100", "500"})
+    public int batchSize;
+
+    private WriteBehindWriter writer;
+    private final MessageRecord record = new MessageRecord();
+
+    @Setup
+    public void setup() {
+        writer = new WriteBehindWriter(batchSize, 10, 10_000, TimeUnit.MINUTES.toMillis(1), 1, records -> {
+            Blackhole.consumeCPU(COMMIT_TOKENS);
+            Blackhole.consumeCPU(ROW_TOKENS * records.size());
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        writer.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CompletableFuture<Void> persist() {
+        return writer.persist(record);
+    }
+
+    static class MessageTable extends TableImpl<MessageRecord> {
+        static final MessageTable MESSAGE = new MessageTable();
+
+        final TableField<MessageRecord, Long> ID = createField(DSL.name("id"), SQLDataType.BIGINT, this, "");
+        final TableField<MessageRecord, String> TEXT = createField(DSL.name("text"), SQLDataType.VARCHAR, this, "");
+
+        MessageTable() {
+            super(DSL.name("message"));
+        }
+
+        @Override
+        public Class<MessageRecord> getRecordType() {
+            return MessageRecord.class;
+        }
+    }
+
+    static class MessageRecord extends TableRecordImpl<MessageRecord> {
+        MessageRecord() {
+            super(MessageTable.MESSAGE);
+            set(MessageTable.MESSAGE.ID, 1L);
+            set(MessageTable.MESSAGE.TEXT, "hello");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.project.bench;
+
+import com.project.WebSocketSessionManager;
+import com.project.annotation.Command;
+import com.project.annotation.WebSocketRoute;
+
+import java.util.List;
+
+/**
+ * Controller the JMH benchmarks dispatch to. It lives in its own package so that the route module the
+ * processor generates for it stays out of the library's packages.
+ */
+@WebSocketRoute(route = BenchController.ROUTE)
+public class BenchController {
+    public static final String ROUTE = "/bench";
+
+    private WebSocketSessionManager sessionManager;
+
+    public void setSession(WebSocketSessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    @Command("echo")
+    public void echo(Payload payload) {
+        sessionManager.current().send("echo", payload);
+    }
+
+    @Command("raw")
+    public void raw(String message) {
+        sessionManager.current().send("raw", message);
+    }
+
+    public static class Payload {
+        public String text;
+        public long timestamp;
+        public List<String> tags;
+    }
+}
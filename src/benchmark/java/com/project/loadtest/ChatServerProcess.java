@@ -0,0 +1,124 @@
+package com.project.loadtest;
+
+import com.project.EnvConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A chat server serving {@code com.project.loadtest.controller}, either started as a child process on the
+ * benchmark classpath or already running at host:port, plus access to its /metrics endpoint.
+ */
+class ChatServerProcess implements AutoCloseable {
+    private static final String CONTROLLER_PACKAGE = "com.project.loadtest.controller";
+
+    private final HttpClient httpClient;
+    private final URI metricsUri;
+    private final Process process;
+
+    private ChatServerProcess(HttpClient httpClient, String host, int port, Process process) {
+        this.httpClient = httpClient;
+        this.metricsUri = URI.create("http://" + host + ":" + port + "/metrics");
+        this.process = process;
+    }
+
+    static ChatServerProcess attach(HttpClient httpClient, String host, int port) {
+        return new ChatServerProcess(httpClient, host, port, null);
+    }
+
+    static ChatServerProcess spawn(HttpClient httpClient, String host, int port, String transport)
+            throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        for (String option : EnvConfig.getString("LOAD_SERVER_JVM_ARGS", "").split("\\s+")) {
+            if (!option.isEmpty()) {
+                command.add(option);
+            }
+        }
+        command.addAll(List.of("-Dlogback.configurationFile=logback-benchmark.xml",
+                "-cp", System.getProperty("java.class.path"), "com.project.TcpChatServer"));
+
+        File log = File.createTempFile("loadtest-server", ".log");
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log);
+        builder.environment().put("CHAT_PORT", String.valueOf(port));
+        builder.environment().put("CHAT_CONTROLLER_PACKAGES", CONTROLLER_PACKAGE);
+        builder.environment().put("CHAT_TRANSPORT", transport);
+        ChatServerProcess server = new ChatServerProcess(httpClient, host, port, builder.start());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            if (!server.process.isAlive()) {
+                throw new IllegalStateException("Server exited with " + server.process.exitValue() + ", see " + log);
+            }
+            try {
+                httpClient.send(server.metricsRequest(), HttpResponse.BodyHandlers.discarding());
+                System.out.printf("Started %s server on port %d (log: %s)%n", transport, port, log);
+                return server;
+            } catch (IOException e) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        }
+        server.close();
+        throw new IllegalStateException("Server did not start listening on port " + port);
+    }
+
+    /**
+     * Runs a full GC in a spawned server through jcmd, so that heap figures scraped afterwards show live data.
+     */
+    void collectGarbage() throws IOException, InterruptedException {
+        if (process == null) {
+            return;
+        }
+        String jcmd = Path.of(System.getProperty("java.home"), "bin", "jcmd").toString();
+        Process gc = new ProcessBuilder(jcmd, String.valueOf(process.pid()), "GC.run")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if (!gc.waitFor(30, TimeUnit.SECONDS)) {
+            gc.destroy();
+        }
+    }
+
+    Map<String, Double> scrapeMetrics() {
+        Map<String, Double> metrics = new HashMap<>();
+        try {
+            String body = httpClient.send(metricsRequest(), HttpResponse.BodyHandlers.ofString()).body();
+            for (String line : body.split("\n")) {
+                int space = line.lastIndexOf(' ');
+                if (line.isEmpty() || line.startsWith("#") || space < 0) {
+                    continue;
+                }
+                metrics.put(line.substring(0, space), Double.parseDouble(line.substring(space + 1)));
+            }
+        } catch (Exception e) {
+            System.out.printf("Failed to scrape server metrics: %s%n", e);
+        }
+        return metrics;
+    }
+
+    private HttpRequest metricsRequest() {
+        return HttpRequest.newBuilder(metricsUri)
+                .timeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        if (process != null) {
+            process.destroy();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+}
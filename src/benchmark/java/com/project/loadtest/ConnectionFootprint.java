@@ -0,0 +1,136 @@
+package com.project.loadtest;
+
+import com.project.EnvConfig;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Compares the server's memory footprint per transport. For each transport in LOAD_TRANSPORTS a fresh server is
+ * started and grown through the connection counts in LOAD_CONNECTION_STEPS; at every step the connections are
+ * logged in and left idle for LOAD_SETTLE_SECONDS, then a full GC is run and RSS, live heap and thread count are
+ * scraped from /metrics.
+ * <pre>
+ * mvn -Pbenchmarks package
+ * LOAD_CONNECTION_STEPS=0,1000,5000 java -cp target/benchmarks.jar com.project.loadtest.ConnectionFootprint
+ * </pre>
+ */
+public class ConnectionFootprint {
+    private final String host = EnvConfig.getString("LOAD_HOST", "127.0.0.1");
+    private final int port = EnvConfig.getInt("LOAD_PORT", 8090);
+    private final List<String> transports = List.of(EnvConfig.getString("LOAD_TRANSPORTS", "blocking,nio").split(","));
+    private final List<Integer> steps = parseSteps(EnvConfig.getString("LOAD_CONNECTION_STEPS", "0,1000,2000,5000"));
+    private final int settleSeconds = EnvConfig.getInt("LOAD_SETTLE_SECONDS", 5);
+
+    private record Sample(double rssBytes, double heapUsedBytes, double threads) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new ConnectionFootprint().run();
+    }
+
+    private static List<Integer> parseSteps(String value) {
+        List<Integer> steps = new ArrayList<>();
+        for (String step : value.split(",")) {
+            steps.add(Integer.parseInt(step.trim()));
+        }
+        if (steps.isEmpty() || steps.stream().anyMatch(step -> step < 0)
+                || !steps.equals(steps.stream().sorted().toList())) {
+            throw new IllegalArgumentException("LOAD_CONNECTION_STEPS must be ascending, non-negative counts");
+        }
+        return steps;
+    }
+
+    private void run() throws Exception {
+        Map<String, List<Sample>> results = new LinkedHashMap<>();
+        for (String transport : transports) {
+            results.put(transport.trim(), measure(transport.trim()));
+        }
+        report(results);
+    }
+
+    private List<Sample> measure(String transport) throws Exception {
+        List<Sample> samples = new ArrayList<>();
+        List<LoadClient> clients = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(executor)
+                    .build();
+            try (ChatServerProcess server = ChatServerProcess.spawn(httpClient, host, port, transport)) {
+                measureSteps(server, httpClient, transport, clients, samples);
+            } finally {
+                clients.forEach(LoadClient::close);
+            }
+        }
+        return samples;
+    }
+
+    private void measureSteps(ChatServerProcess server, HttpClient httpClient, String transport,
+                              List<LoadClient> clients, List<Sample> samples) throws Exception {
+        LoadGenerator.Stats stats = new LoadGenerator.Stats();
+        URI uri = URI.create("ws://" + host + ":" + port + LoadGenerator.ROUTE);
+        for (int step : steps) {
+            List<LoadClient> added = new ArrayList<>();
+            while (clients.size() < step) {
+                LoadClient client = new LoadClient(clients.size(), stats);
+                client.connect(httpClient, uri);
+                client.login();
+                clients.add(client);
+                added.add(client);
+            }
+            for (LoadClient client : added) {
+                client.awaitReady(30);
+            }
+
+            TimeUnit.SECONDS.sleep(settleSeconds);
+            server.collectGarbage();
+            Map<String, Double> metrics = server.scrapeMetrics();
+            Sample sample = new Sample(
+                    metrics.getOrDefault("simplechat_process_resident_memory_bytes", 0.0),
+                    metrics.getOrDefault("simplechat_jvm_heap_used_bytes", 0.0),
+                    metrics.getOrDefault("simplechat_jvm_threads", 0.0));
+            samples.add(sample);
+            System.out.printf("%-8s %,7d connections: RSS %,.1f MB, heap used %,.1f MB, %,.0f threads%n",
+                    transport, step, sample.rssBytes() / 1e6, sample.heapUsedBytes() / 1e6, sample.threads());
+        }
+    }
+
+    private void report(Map<String, List<Sample>> results) {
+        StringBuilder header = new StringBuilder(String.format("%n%11s", "connections"));
+        results.keySet().forEach(transport -> header.append(String.format(" | %-34s", transport)));
+        System.out.println(header);
+        StringBuilder units = new StringBuilder(String.format("%11s", ""));
+        results.keySet().forEach(transport -> units.append(String.format(" | %9s %7s %8s %7s", "RSS MB", "KB/conn", "heap MB", "KB/conn")));
+        System.out.println(units);
+
+        for (int i = 0; i < steps.size(); i++) {
+            StringBuilder row = new StringBuilder(String.format("%,11d", steps.get(i)));
+            for (List<Sample> samples : results.values()) {
+                Sample sample = samples.get(i);
+                row.append(String.format(" | %9.1f %7s %8.1f %7s",
+                        sample.rssBytes() / 1e6, perConnection(samples, i, Sample::rssBytes),
+                        sample.heapUsedBytes() / 1e6, perConnection(samples, i, Sample::heapUsedBytes)));
+            }
+            System.out.println(row);
+        }
+    }
+
+    private String perConnection(List<Sample> samples, int step, ToDoubleFunction<Sample> metric) {
+        int connections = steps.get(step) - steps.getFirst();
+        if (connections == 0) {
+            return "-";
+        }
+        double delta = metric.applyAsDouble(samples.get(step)) - metric.applyAsDouble(samples.getFirst());
+        return String.format("%.1f", delta / connections / 1024);
+    }
+}
@@ -0,0 +1,207 @@
+package com.project.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.project.loadtest.controller.LoadMessage;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One load-test connection. Sends happen only from the connection's driver thread; replies are parsed on the
+ * HTTP client's executor and recorded when their original send time falls inside the measurement window.
+ */
+class LoadClient implements WebSocket.Listener {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final int id;
+    private final UUID userId = UUID.randomUUID();
+    private final LoadGenerator.Stats stats;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final Map<String, PendingDownload> downloads = new ConcurrentHashMap<>();
+    private final StringBuilder text = new StringBuilder();
+    private WebSocket webSocket;
+    private String chunkFileId;
+    private int uploads;
+
+    private static class PendingDownload {
+        private final long sentAt;
+        private int remainingChunks;
+
+        PendingDownload(long sentAt, int remainingChunks) {
+            this.sentAt = sentAt;
+            this.remainingChunks = remainingChunks;
+        }
+    }
+
+    LoadClient(int id, LoadGenerator.Stats stats) {
+        this.id = id;
+        this.stats = stats;
+    }
+
+    UUID getUserId() {
+        return userId;
+    }
+
+    void connect(HttpClient httpClient, URI uri) {
+        webSocket = httpClient.newWebSocketBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .buildAsync(uri, this)
+                .join();
+    }
+
+    void login() {
+        LoadMessage message = new LoadMessage();
+        message.user = userId.toString();
+        send("login", "text", message);
+    }
+
+    void join(String topic) {
+        LoadMessage message = new LoadMessage();
+        message.topic = topic;
+        send("join", "text", message);
+    }
+
+    void awaitReady(long timeoutSeconds) throws Exception {
+        ready.get(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    void sendDirect(UUID to, long sentAt, String payload) {
+        LoadMessage message = new LoadMessage();
+        message.to = to.toString();
+        message.sentAt = sentAt;
+        message.payload = payload;
+        send("direct", "text", message);
+    }
+
+    void publish(String topic, long sentAt, String payload) {
+        LoadMessage message = new LoadMessage();
+        message.topic = topic;
+        message.sentAt = sentAt;
+        message.payload = payload;
+        send("publish", "text", message);
+    }
+
+    void upload(byte[] file, long sentAt) {
+        LoadMessage message = new LoadMessage();
+        message.sentAt = sentAt;
+        String fileId = id + "-" + uploads++;
+        int totalChunks = (file.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        ObjectNode metaData = envelope("upload", "metaData", message);
+        metaData.put("id", fileId).put("fileSize", file.length).put("totalChunks", totalChunks);
+        sendText(metaData);
+        for (int chunk = 0; chunk < totalChunks; chunk++) {
+            int offset = chunk * CHUNK_SIZE;
+            int length = Math.min(CHUNK_SIZE, file.length - offset);
+            ObjectNode preChunk = objectMapper.createObjectNode()
+                    .put("command", "upload").put("type", "preChunk")
+                    .put("id", fileId).put("chunkSize", length).put("chunkNum", chunk);
+            sendText(preChunk);
+            webSocket.sendBinary(ByteBuffer.wrap(file, offset, length), true).join();
+            stats.sentBytes.add(length);
+        }
+    }
+
+    void download(int size, long sentAt) {
+        LoadMessage message = new LoadMessage();
+        message.size = size;
+        message.sentAt = sentAt;
+        send("download", "text", message);
+    }
+
+    private void send(String command, String type, LoadMessage message) {
+        sendText(envelope(command, type, message));
+    }
+
+    private static ObjectNode envelope(String command, String type, LoadMessage message) {
+        ObjectNode envelope = objectMapper.createObjectNode().put("command", command).put("type", type);
+        envelope.set("message", objectMapper.valueToTree(message));
+        return envelope;
+    }
+
+    private void sendText(ObjectNode envelope) {
+        String json = envelope.toString();
+        webSocket.sendText(json, true).join();
+        stats.sentBytes.add(json.length());
+    }
+
+    void close() {
+        if (webSocket != null) {
+            webSocket.abort();
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        text.append(data);
+        if (last) {
+            String message = text.toString();
+            text.setLength(0);
+            stats.receivedBytes.add(message.length());
+            try {
+                handleText(objectMapper.readTree(message));
+            } catch (Exception e) {
+                stats.errors.increment();
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        stats.receivedBytes.add(data.remaining());
+        if (last && chunkFileId != null) {
+            PendingDownload download = downloads.get(chunkFileId);
+            if (download != null && --download.remainingChunks == 0) {
+                downloads.remove(chunkFileId);
+                stats.delivered(download.sentAt);
+            }
+            chunkFileId = null;
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        stats.errors.increment();
+        ready.completeExceptionally(error);
+    }
+
+    private void handleText(JsonNode envelope) {
+        String command = envelope.path("command").asText();
+        String type = envelope.path("type").asText();
+        JsonNode message = envelope.path("message");
+
+        if (type.equals("metaData")) {
+            downloads.put(envelope.path("id").asText(),
+                    new PendingDownload(message.path("sentAt").asLong(), envelope.path("totalChunks").asInt()));
+            return;
+        }
+        if (type.equals("preChunk")) {
+            chunkFileId = envelope.path("id").asText();
+            return;
+        }
+
+        switch (command) {
+            case "ready" -> ready.complete(null);
+            case "direct", "group", "uploaded" -> stats.delivered(message.path("sentAt").asLong());
+            case "error" -> stats.errors.increment();
+            default -> {
+            }
+        }
+    }
+}
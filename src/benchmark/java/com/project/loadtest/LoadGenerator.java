@@ -0,0 +1,226 @@
+package com.project.loadtest;
+
+import com.project.EnvConfig;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Loopback load generator. Opens LOAD_CONNECTIONS WebSocket connections to a chat server, drives one of the
+ * workloads below at LOAD_RATE operations per second per connection, and reports delivery throughput,
+ * latency percentiles and the server's RSS/heap/GC figures scraped from /metrics.
+ * <ul>
+ *     <li>{@code chat}: connections are paired and send direct messages to their partner.</li>
+ *     <li>{@code broadcast}: connections join groups of LOAD_GROUP_SIZE and publish to their group.</li>
+ *     <li>{@code files}: connections alternate LOAD_FILE_BYTES uploads and downloads over metaData/preChunk.</li>
+ * </ul>
+ * By default the server is started as a child process serving {@code com.project.loadtest.controller}, so
+ * no database is needed; set LOAD_SPAWN_SERVER=false to target a server that is already running.
+ * Latency is measured from the intended send time, so a stalled sender does not hide queueing delay.
+ * <pre>
+ * mvn -Pbenchmarks package
+ * LOAD_WORKLOAD=broadcast LOAD_CONNECTIONS=1000 java -cp target/benchmarks.jar com.project.loadtest.LoadGenerator
+ * </pre>
+ */
+public class LoadGenerator {
+    static final String ROUTE = "/load";
+
+    private final String workload = EnvConfig.getString("LOAD_WORKLOAD", "chat").toLowerCase(Locale.ROOT);
+    private final String host = EnvConfig.getString("LOAD_HOST", "127.0.0.1");
+    private final int port = EnvConfig.getInt("LOAD_PORT", 8090);
+    private final int connections = EnvConfig.getInt("LOAD_CONNECTIONS", 100);
+    private final double rate = Double.parseDouble(EnvConfig.getString("LOAD_RATE", "10"));
+    private final int warmupSeconds = EnvConfig.getInt("LOAD_WARMUP_SECONDS", 5);
+    private final int durationSeconds = EnvConfig.getInt("LOAD_DURATION_SECONDS", 30);
+    private final int payloadBytes = EnvConfig.getInt("LOAD_PAYLOAD_BYTES", 128);
+    private final int groupSize = EnvConfig.getInt("LOAD_GROUP_SIZE", 50);
+    private final int fileBytes = EnvConfig.getInt("LOAD_FILE_BYTES", 256 * 1024);
+    private final boolean spawnServer = EnvConfig.getBoolean("LOAD_SPAWN_SERVER", true);
+
+    private final Stats stats = new Stats();
+    private final List<LoadClient> clients = new ArrayList<>();
+    private volatile boolean running = true;
+
+    static class Stats {
+        final LatencyRecorder latency = new LatencyRecorder();
+        final LongAdder sent = new LongAdder();
+        final LongAdder sentBytes = new LongAdder();
+        final LongAdder receivedBytes = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        volatile long windowStart = Long.MAX_VALUE;
+        volatile long windowEnd = Long.MAX_VALUE;
+
+        void delivered(long sentAt) {
+            if (sentAt >= windowStart && sentAt < windowEnd) {
+                latency.record(System.nanoTime() - sentAt);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator().run();
+    }
+
+    private void run() throws Exception {
+        if (!List.of("chat", "broadcast", "files").contains(workload)) {
+            throw new IllegalArgumentException("Unknown workload: " + workload);
+        }
+        if (workload.equals("chat") && connections % 2 != 0) {
+            throw new IllegalArgumentException("The chat workload needs an even number of connections");
+        }
+
+        ChatServerProcess server = null;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(executor)
+                    .build();
+            server = spawnServer
+                    ? ChatServerProcess.spawn(httpClient, host, port, EnvConfig.getString("LOAD_SERVER_TRANSPORT", "blocking"))
+                    : ChatServerProcess.attach(httpClient, host, port);
+            connect(httpClient);
+
+            List<Thread> drivers = new ArrayList<>();
+            for (int i = 0; i < clients.size(); i++) {
+                int index = i;
+                drivers.add(Thread.ofVirtual().name("load-driver-" + i).start(() -> drive(index)));
+            }
+
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            Map<String, Double> before = server.scrapeMetrics();
+            long sentBefore = stats.sent.sum();
+            stats.windowStart = System.nanoTime();
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            stats.windowEnd = System.nanoTime();
+            long sentInWindow = stats.sent.sum() - sentBefore;
+
+            running = false;
+            for (Thread driver : drivers) {
+                driver.join(TimeUnit.SECONDS.toMillis(10));
+            }
+            TimeUnit.SECONDS.sleep(2);
+            Map<String, Double> after = server.scrapeMetrics();
+            report(sentInWindow, before, after);
+        } finally {
+            clients.forEach(LoadClient::close);
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    private void connect(HttpClient httpClient) throws Exception {
+        URI uri = URI.create("ws://" + host + ":" + port + ROUTE);
+        for (int i = 0; i < connections; i++) {
+            LoadClient client = new LoadClient(i, stats);
+            client.connect(httpClient, uri);
+            clients.add(client);
+        }
+
+        if (!workload.equals("files")) {
+            for (int i = 0; i < clients.size(); i++) {
+                if (workload.equals("chat")) {
+                    clients.get(i).login();
+                } else {
+                    clients.get(i).join(groupTopic(i));
+                }
+            }
+            for (LoadClient client : clients) {
+                client.awaitReady(30);
+            }
+        }
+        System.out.printf("Connected %d clients to %s (%s workload)%n", clients.size(), uri, workload);
+    }
+
+    private String groupTopic(int index) {
+        return "load-group-" + index / groupSize;
+    }
+
+    private void drive(int index) {
+        LoadClient client = clients.get(index);
+        String payload = "x".repeat(payloadBytes);
+        byte[] file = new byte[fileBytes];
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long next = System.nanoTime() + ThreadLocalRandom.current().nextLong(Math.max(1, interval));
+        long operations = 0;
+
+        while (running) {
+            long delay = next - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+                continue;
+            }
+
+            try {
+                switch (workload) {
+                    case "chat" -> client.sendDirect(clients.get(index ^ 1).getUserId(), next, payload);
+                    case "broadcast" -> client.publish(groupTopic(index), next, payload);
+                    default -> {
+                        if (operations % 2 == 0) {
+                            client.upload(file, next);
+                        } else {
+                            client.download(fileBytes, next);
+                        }
+                    }
+                }
+                stats.sent.increment();
+            } catch (Exception e) {
+                stats.errors.increment();
+                if (!running) {
+                    return;
+                }
+            }
+            operations++;
+            next += interval;
+        }
+    }
+
+    private void report(long sentInWindow, Map<String, Double> before, Map<String, Double> after) {
+        LatencyRecorder latency = stats.latency;
+        System.out.printf("%nWorkload %s: %d connections, %.1f ops/s each, %ds measured%n",
+                workload, clients.size(), rate, durationSeconds);
+        System.out.printf("Sent       %,d operations (%,.0f/s)%n", sentInWindow, (double) sentInWindow / durationSeconds);
+        System.out.printf("Delivered  %,d messages (%,.0f/s)%n", latency.getCount(), (double) latency.getCount() / durationSeconds);
+        System.out.printf("Traffic    %,.1f MB sent, %,.1f MB received in total%n",
+                stats.sentBytes.sum() / 1e6, stats.receivedBytes.sum() / 1e6);
+        System.out.printf("Errors     %,d%n", stats.errors.sum());
+        System.out.printf("Latency    p50 %s  p99 %s  p99.9 %s  max %s%n",
+                formatMicros(latency.percentileMicros(50)), formatMicros(latency.percentileMicros(99)),
+                formatMicros(latency.percentileMicros(99.9)), formatMicros(latency.getMaxMicros()));
+
+        if (after.isEmpty()) {
+            return;
+        }
+        System.out.printf("Server     RSS %,.1f MB, heap used %,.1f MB, %,.0f threads%n",
+                after.getOrDefault("simplechat_process_resident_memory_bytes", 0.0) / 1e6,
+                after.getOrDefault("simplechat_jvm_heap_used_bytes", 0.0) / 1e6,
+                after.getOrDefault("simplechat_jvm_threads", 0.0));
+        System.out.printf("Server GC  %,.0f collections, %,.3f s paused during the run%n",
+                delta(before, after, "simplechat_jvm_gc_collections_total"),
+                delta(before, after, "simplechat_jvm_gc_collection_seconds_total"));
+    }
+
+    private static double delta(Map<String, Double> before, Map<String, Double> after, String metric) {
+        double total = 0;
+        for (Map.Entry<String, Double> entry : after.entrySet()) {
+            if (entry.getKey().startsWith(metric + "{")) {
+                total += entry.getValue() - before.getOrDefault(entry.getKey(), 0.0);
+            }
+        }
+        return total;
+    }
+
+    private static String formatMicros(long micros) {
+        return micros >= 1000 ? String.format("%.2f ms", micros / 1000.0) : micros + " us";
+    }
+}
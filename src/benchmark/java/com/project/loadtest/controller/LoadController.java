@@ -0,0 +1,54 @@
+package com.project.loadtest.controller;
+
+import com.project.WebSocketSessionManager;
+import com.project.annotation.Binary;
+import com.project.annotation.Command;
+import com.project.annotation.WebSocketRoute;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@WebSocketRoute(route = "/load")
+public class LoadController {
+    private final Map<Integer, byte[]> downloads = new ConcurrentHashMap<>();
+    private WebSocketSessionManager sessionManager;
+
+    public void setSession(WebSocketSessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    @Command("login")
+    public void login(LoadMessage message) {
+        sessionManager.registerSession(UUID.fromString(message.user));
+        sessionManager.current().send("ready", message);
+    }
+
+    @Command("join")
+    public void join(LoadMessage message) {
+        sessionManager.subscribe(message.topic);
+        sessionManager.current().send("ready", message);
+    }
+
+    @Command("direct")
+    public void direct(LoadMessage message) {
+        sessionManager.otherSession(UUID.fromString(message.to)).send("direct", message);
+    }
+
+    @Command("publish")
+    public void publish(LoadMessage message) {
+        sessionManager.publish(message.topic, "group", message);
+    }
+
+    @Binary
+    @Command("upload")
+    public void upload(LoadMessage message, byte[] data) {
+        message.size = data.length;
+        sessionManager.current().send("uploaded", message);
+    }
+
+    @Command("download")
+    public void download(LoadMessage message) {
+        sessionManager.current().sendFile("download", downloads.computeIfAbsent(message.size, byte[]::new), message);
+    }
+}
@@ -0,0 +1,14 @@
+package com.project.loadtest.controller;
+
+/**
+ * Envelope payload of every load-test command. {@code sentAt} is the sender's intended send time in
+ * {@link System#nanoTime()} units and travels back unchanged, so the receiver can compute delivery latency.
+ */
+public class LoadMessage {
+    public String user;
+    public String to;
+    public String topic;
+    public long sentAt;
+    public int size;
+    public String payload;
+}
@@ -0,0 +1,180 @@
+package com.project;
+
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Optional "simplechat.binary.v1" subprotocol. Every message is a single binary frame:
+ * <pre>
+ * u8 type | u16 command id [| u8 length, utf-8 name when id is 0] | type specific fields | body
+ *   TEXT      body = CBOR message
+ *   META_DATA i32 upload id, i64 file size, i32 total chunks, body = CBOR metadata
+ *   CHUNK     i32 upload id, i32 chunk number, body = raw chunk bytes
+ *   COMMANDS  body = CBOR map of command name to id, sent by the server after the handshake
+ *   RESUME    same layout as META_DATA, continues a parked upload with the same id if it still matches
+ * </pre>
+ * Multi-byte fields are big-endian.
+ */
+public class BinaryProtocol {
+    public static final String NAME = "simplechat.binary.v1";
+
+    public static final int TEXT = 1;
+    public static final int META_DATA = 2;
+    public static final int CHUNK = 3;
+    public static final int COMMANDS = 4;
+    public static final int RESUME = 5;
+
+    private static final int CHUNK_HEADER_LENGTH = 11;
+
+    private static final ObjectMapper cborMapper = new CBORMapper();
+    static {
+        cborMapper.registerModule(new JavaTimeModule());
+        cborMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+    private static final ClassValue<ObjectReader> readers = new ClassValue<>() {
+        @Override
+        protected ObjectReader computeValue(Class<?> type) {
+            return cborMapper.readerFor(type);
+        }
+    };
+    private static final ClassValue<ObjectWriter> writers = new ClassValue<>() {
+        @Override
+        protected ObjectWriter computeValue(Class<?> type) {
+            return cborMapper.writerFor(type);
+        }
+    };
+
+    public record Frame(int type, String command, int uploadId, long fileSize, int totalChunks, int chunkNum,
+                        int bodyOffset, int bodyLength) {
+    }
+
+    public static byte[] encodeText(CommandTable table, String command, Object message) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder();
+        writeCommand(out, TEXT, table, command);
+        writeBody(out, message);
+        return out.toByteArray();
+    }
+
+    public static byte[] encodeMetaData(CommandTable table, String command, int uploadId, long fileSize,
+                                        int totalChunks, Object metadata) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder();
+        writeCommand(out, META_DATA, table, command);
+        out.appendFourBytes(uploadId);
+        out.appendFourBytes((int) (fileSize >>> 32));
+        out.appendFourBytes((int) fileSize);
+        out.appendFourBytes(totalChunks);
+        writeBody(out, metadata);
+        return out.toByteArray();
+    }
+
+    public static ByteBuffer encodeChunkHeader(CommandTable table, String command, int uploadId, int chunkNum) {
+        int commandId = table.idOf(command);
+        byte[] name = commandId == CommandTable.INLINE_COMMAND ? commandName(command) : null;
+
+        ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_LENGTH + (name != null ? name.length + 1 : 0));
+        header.put((byte) CHUNK).putShort((short) commandId);
+        if (name != null) {
+            header.put((byte) name.length).put(name);
+        }
+        return header.putInt(uploadId).putInt(chunkNum).flip();
+    }
+
+    public static byte[] encodeCommandTable(CommandTable table) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder();
+        out.append(COMMANDS);
+        out.appendTwoBytes(CommandTable.INLINE_COMMAND);
+        out.append(0);
+        writeBody(out, table.asMap());
+        return out.toByteArray();
+    }
+
+    public static Frame decode(byte[] data, int offset, int length, CommandTable table) {
+        ByteBuffer in = ByteBuffer.wrap(data, offset, length);
+        try {
+            int type = in.get() & 0xFF;
+            int commandId = in.getShort() & 0xFFFF;
+
+            String command;
+            if (commandId == CommandTable.INLINE_COMMAND) {
+                byte[] name = new byte[in.get() & 0xFF];
+                in.get(name);
+                command = new String(name, StandardCharsets.UTF_8);
+            } else {
+                command = table.nameOf(commandId);
+            }
+
+            int uploadId = 0;
+            long fileSize = 0;
+            int totalChunks = 0;
+            int chunkNum = 0;
+            switch (type) {
+                case META_DATA, RESUME -> {
+                    uploadId = in.getInt();
+                    fileSize = in.getLong();
+                    totalChunks = in.getInt();
+                }
+                case CHUNK -> {
+                    uploadId = in.getInt();
+                    chunkNum = in.getInt();
+                }
+                case TEXT -> {
+                }
+                default -> throw new IllegalArgumentException("Invalid message type");
+            }
+
+            return new Frame(type, command, uploadId, fileSize, totalChunks, chunkNum, in.position(), in.remaining());
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated binary message", e);
+        }
+    }
+
+    public static <T> T readValue(byte[] data, Frame frame, Class<T> type) throws IOException {
+        if (frame.bodyLength() == 0) {
+            return null;
+        }
+        return readers.get(type).readValue(data, frame.bodyOffset(), frame.bodyLength());
+    }
+
+    public static JsonNode readTree(byte[] data, Frame frame) throws IOException {
+        if (frame.bodyLength() == 0) {
+            return null;
+        }
+        return cborMapper.readTree(data, frame.bodyOffset(), frame.bodyLength());
+    }
+
+    private static void writeCommand(ByteArrayBuilder out, int type, CommandTable table, String command) {
+        int commandId = table.idOf(command);
+        out.append(type);
+        out.appendTwoBytes(commandId);
+        if (commandId == CommandTable.INLINE_COMMAND) {
+            byte[] name = commandName(command);
+            out.append(name.length);
+            out.write(name);
+        }
+    }
+
+    private static byte[] commandName(String command) {
+        byte[] name = command.getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFF) {
+            throw new IllegalArgumentException("Command name too long for binary protocol: " + command);
+        }
+        return name;
+    }
+
+    private static void writeBody(ByteArrayBuilder out, Object value) throws IOException {
+        if (value != null) {
+            writers.get(value.getClass()).writeValue(out, value);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.project;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Forwards messages for users connected to other nodes. Implementations keep a cluster-wide
+ * user to node presence index so that messages only travel to nodes that hold a recipient.
+ * Only user-addressed messages cross nodes: topics and file transfers stay node-local.
+ */
+public interface ClusterBackplane extends AutoCloseable {
+
+    interface Receiver {
+        void deliver(Collection<UUID> userIds, String command, JsonNode message);
+    }
+
+    void start(Receiver receiver);
+
+    void userOnline(UUID userId);
+
+    void userOffline(UUID userId);
+
+    void forward(Collection<UUID> userIds, String command, Object message);
+
+    /**
+     * Whether {@code userId} has a session on another node, as far as the presence index knows.
+     */
+    boolean isRemote(UUID userId);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,48 @@
+package com.project;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Sends to the local sessions of a set of users and forwards text messages to the nodes holding the rest.
+ * Files are not forwarded: a file for a user connected to another node fails before anything is sent.
+ */
+public class ClusterSessionWrapper implements SessionSender {
+    private final SessionSender local;
+    private final Collection<UUID> userIds;
+    private final ClusterBackplane backplane;
+
+    public ClusterSessionWrapper(SessionSender local, Collection<UUID> userIds, ClusterBackplane backplane) {
+        this.local = local;
+        this.userIds = userIds;
+        this.backplane = backplane;
+    }
+
+    @Override
+    public void send(String command, Object message) {
+        local.send(command, message);
+        backplane.forward(userIds, command, message);
+    }
+
+    @Override
+    public void sendFile(String command, byte[] fileData, Object metadata) {
+        requireLocal(command);
+        local.sendFile(command, fileData, metadata);
+    }
+
+    @Override
+    public void sendFile(String command, Path file, Object metadata) {
+        requireLocal(command);
+        local.sendFile(command, file, metadata);
+    }
+
+    private void requireLocal(String command) {
+        for (UUID userId : userIds) {
+            if (backplane.isRemote(userId)) {
+                throw new IllegalStateException("Cannot send file " + command + ": user " + userId
+                        + " is connected to another node and file transfers are node-local");
+            }
+        }
+    }
+}
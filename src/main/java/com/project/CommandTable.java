@@ -0,0 +1,39 @@
+package com.project;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CommandTable {
+    public static final int INLINE_COMMAND = 0;
+
+    private final String[] names;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    public CommandTable(Collection<String> commands) {
+        this.names = commands.stream().sorted().toArray(String[]::new);
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i + 1);
+        }
+        if (names.length > 0xFFFF) {
+            throw new IllegalArgumentException("Too many commands for binary protocol: " + names.length);
+        }
+    }
+
+    public int idOf(String command) {
+        Integer id = ids.get(command);
+        return id != null ? id : INLINE_COMMAND;
+    }
+
+    public String nameOf(int id) {
+        if (id < 1 || id > names.length) {
+            throw new IllegalArgumentException("Unknown command id: " + id);
+        }
+        return names[id - 1];
+    }
+
+    public Map<String, Integer> asMap() {
+        return Collections.unmodifiableMap(ids);
+    }
+}
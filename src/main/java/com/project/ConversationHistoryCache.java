@@ -0,0 +1,353 @@
+package com.project;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.RecordMapper;
+import org.jooq.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps the newest messages of recently read conversations in per-conversation ring buffers, ordered by a
+ * monotonic message key. Conversations are evicted least recently used first when either the conversation
+ * or the total message limit is exceeded. Pages are returned newest first; anything not held in the ring
+ * is loaded from the database with a keyset query.
+ */
+public class ConversationHistoryCache<M> {
+    private static final int DEFAULT_RING_SIZE = 200;
+    private static final int DEFAULT_MAX_CONVERSATIONS = 10_000;
+    private static final long DEFAULT_MAX_MESSAGES = 1_000_000;
+
+    @FunctionalInterface
+    public interface HistoryLoader<M> {
+        /**
+         * Returns up to {@code limit} messages of the conversation with a key below {@code beforeKey}
+         * (all messages when it is null), newest first.
+         */
+        List<M> load(UUID conversationId, Long beforeKey, int limit);
+    }
+
+    private final HistoryLoader<M> loader;
+    private final ToLongFunction<M> keyOf;
+    private final int ringSize;
+    private final int maxConversations;
+    private final long maxMessages;
+    private final LinkedHashMap<UUID, Ring<M>> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong cachedMessages = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Cache sized from HISTORY_CACHE_* settings whose {@link #stats()} are published on /metrics under {@code name}.
+     */
+    public ConversationHistoryCache(String name, HistoryLoader<M> loader, ToLongFunction<M> keyOf) {
+        this(loader, keyOf,
+                EnvConfig.getInt("HISTORY_CACHE_RING_SIZE", DEFAULT_RING_SIZE),
+                EnvConfig.getInt("HISTORY_CACHE_MAX_CONVERSATIONS", DEFAULT_MAX_CONVERSATIONS),
+                EnvConfig.getLong("HISTORY_CACHE_MAX_MESSAGES", DEFAULT_MAX_MESSAGES));
+        ServerMetrics.registerGauges(name, this::stats);
+    }
+
+    public ConversationHistoryCache(HistoryLoader<M> loader, ToLongFunction<M> keyOf,
+                                    int ringSize, int maxConversations, long maxMessages) {
+        if (ringSize < 1 || maxConversations < 1 || maxMessages < ringSize) {
+            throw new IllegalArgumentException("Invalid history cache limits");
+        }
+        this.loader = loader;
+        this.keyOf = keyOf;
+        this.ringSize = ringSize;
+        this.maxConversations = maxConversations;
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * Keyset loader over a jOOQ table: {@code where conversation = ? order by key desc seek(?) limit ?}.
+     */
+    public static <R extends Record, M> HistoryLoader<M> keysetLoader(Table<R> table, Field<UUID> conversationField,
+                                                                     Field<Long> keyField, RecordMapper<R, M> mapper) {
+        return (conversationId, beforeKey, limit) -> {
+            var query = DatabaseManager.dsl()
+                    .selectFrom(table)
+                    .where(conversationField.eq(conversationId))
+                    .orderBy(keyField.desc());
+            return beforeKey == null
+                    ? query.limit(limit).fetch(mapper)
+                    : query.seek(beforeKey).limit(limit).fetch(mapper);
+        };
+    }
+
+    public List<M> latest(UUID conversationId, int limit) {
+        if (limit > ringSize) {
+            misses.increment();
+            return load(conversationId, null, limit);
+        }
+
+        Ring<M> ring = ring(conversationId);
+        if (ring.loaded) {
+            List<M> page = ring.page(Long.MAX_VALUE, limit);
+            if (page != null) {
+                hits.increment();
+                return page;
+            }
+        }
+
+        misses.increment();
+        List<M> loaded = fill(ring, conversationId);
+        List<M> page = ring.page(Long.MAX_VALUE, limit);
+        if (page != null) {
+            return page;
+        }
+        // The ring was evicted before or during the fill; answer from what was just loaded if there is one.
+        return loaded != null ? List.copyOf(loaded.subList(0, Math.min(limit, loaded.size())))
+                : load(conversationId, null, limit);
+    }
+
+    public List<M> before(UUID conversationId, long beforeKey, int limit) {
+        Ring<M> ring = cached(conversationId);
+        if (ring != null && ring.loaded) {
+            List<M> page = ring.page(beforeKey, limit);
+            if (page != null) {
+                hits.increment();
+                return page;
+            }
+        }
+
+        misses.increment();
+        return load(conversationId, beforeKey, limit);
+    }
+
+    public void append(UUID conversationId, M message) {
+        Ring<M> ring = cached(conversationId);
+        if (ring != null) {
+            cachedMessages.addAndGet(ring.insert(message));
+            enforceLimits();
+        }
+    }
+
+    public void invalidate(UUID conversationId) {
+        Ring<M> ring;
+        synchronized (conversations) {
+            ring = conversations.remove(conversationId);
+        }
+        if (ring != null) {
+            cachedMessages.addAndGet(-ring.clear());
+        }
+    }
+
+    private List<M> load(UUID conversationId, Long beforeKey, int limit) {
+        loads.increment();
+        return loader.load(conversationId, beforeKey, limit);
+    }
+
+    private Ring<M> cached(UUID conversationId) {
+        synchronized (conversations) {
+            return conversations.get(conversationId);
+        }
+    }
+
+    private Ring<M> ring(UUID conversationId) {
+        Ring<M> ring;
+        synchronized (conversations) {
+            ring = conversations.computeIfAbsent(conversationId, key -> new Ring<>(ringSize, keyOf));
+        }
+        enforceLimits();
+        return ring;
+    }
+
+    /**
+     * Loads the ring unless another reader already has; returns the loaded messages, or null if none were loaded.
+     */
+    private List<M> fill(Ring<M> ring, UUID conversationId) {
+        ring.loadLock.lock();
+        try {
+            if (ring.loaded) {
+                return null;
+            }
+            List<M> messages = load(conversationId, null, ringSize);
+            cachedMessages.addAndGet(ring.merge(messages, messages.size() < ringSize));
+            enforceLimits();
+            return messages;
+        } finally {
+            ring.loadLock.unlock();
+        }
+    }
+
+    private void enforceLimits() {
+        while (true) {
+            Ring<M> evicted;
+            synchronized (conversations) {
+                if (conversations.size() <= maxConversations && cachedMessages.get() <= maxMessages) {
+                    return;
+                }
+                Iterator<Ring<M>> eldest = conversations.values().iterator();
+                if (!eldest.hasNext()) {
+                    return;
+                }
+                evicted = eldest.next();
+                eldest.remove();
+            }
+            cachedMessages.addAndGet(-evicted.clear());
+            evictions.increment();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getCachedConversations() {
+        synchronized (conversations) {
+            return conversations.size();
+        }
+    }
+
+    public long getCachedMessages() {
+        return cachedMessages.get();
+    }
+
+    public Map<String, Number> stats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("hits", getHits());
+        stats.put("misses", getMisses());
+        stats.put("loads", getLoads());
+        stats.put("evictions", getEvictions());
+        stats.put("conversations", getCachedConversations());
+        stats.put("messages", getCachedMessages());
+        return stats;
+    }
+
+    /**
+     * Messages sorted by ascending key in a circular array. {@code complete} means the ring holds the whole
+     * conversation, so a short page is still an answer rather than a miss.
+     */
+    private static class Ring<M> {
+        private final Object[] messages;
+        private final long[] keys;
+        private final ToLongFunction<M> keyOf;
+        private final ReentrantLock loadLock = new ReentrantLock();
+        private int head;
+        private int size;
+        private volatile boolean loaded;
+        private boolean complete;
+        private boolean evicted;
+
+        Ring(int capacity, ToLongFunction<M> keyOf) {
+            this.messages = new Object[capacity];
+            this.keys = new long[capacity];
+            this.keyOf = keyOf;
+        }
+
+        synchronized int insert(M message) {
+            if (evicted) {
+                return 0;
+            }
+            long key = keyOf.applyAsLong(message);
+            int position = size;
+            while (position > 0 && keys[slot(position - 1)] > key) {
+                position--;
+            }
+            if (position > 0 && keys[slot(position - 1)] == key) {
+                messages[slot(position - 1)] = message;
+                return 0;
+            }
+
+            int added = 1;
+            if (size == messages.length) {
+                if (position == 0) {
+                    complete = false;
+                    return 0;
+                }
+                head = slot(1);
+                size--;
+                position--;
+                complete = false;
+                added = 0;
+            }
+            for (int i = size; i > position; i--) {
+                messages[slot(i)] = messages[slot(i - 1)];
+                keys[slot(i)] = keys[slot(i - 1)];
+            }
+            messages[slot(position)] = message;
+            keys[slot(position)] = key;
+            size++;
+            return added;
+        }
+
+        synchronized int merge(List<M> newestFirst, boolean wholeConversation) {
+            if (evicted) {
+                return 0;
+            }
+            int before = size;
+            complete = wholeConversation;
+            for (M message : newestFirst) {
+                insert(message);
+            }
+            loaded = true;
+            return size - before;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized List<M> page(long beforeKey, int limit) {
+            if (evicted) {
+                return null;
+            }
+            int end = size;
+            while (end > 0 && keys[slot(end - 1)] >= beforeKey) {
+                end--;
+            }
+            if (end < limit && !complete) {
+                return null;
+            }
+
+            int start = Math.max(0, end - limit);
+            List<M> page = new ArrayList<>(end - start);
+            for (int i = end - 1; i >= start; i--) {
+                page.add((M) messages[slot(i)]);
+            }
+            return page;
+        }
+
+        synchronized int clear() {
+            int removed = size;
+            evicted = true;
+            complete = false;
+            Arrays.fill(messages, null);
+            size = 0;
+            return removed;
+        }
+
+        private int slot(int index) {
+            return (head + index) % messages.length;
+        }
+    }
+}
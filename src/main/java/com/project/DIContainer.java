@@ -4,6 +4,7 @@ import java.lang.reflect.Constructor;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class DIContainer {
     private static final Map<Class<?>, Object> singletonInstances = new HashMap<>();
@@ -16,6 +17,23 @@ public class DIContainer {
         return clazz.cast(singletonInstances.get(clazz));
     }
 
+    public static <T> T createOrGetInstance(Class<T> clazz, Supplier<T> factory) {
+        T instance = getSingleton(clazz);
+        if (instance == null) {
+            instance = factory.get();
+            singletonInstances.put(clazz, instance);
+        }
+        return instance;
+    }
+
+    public static <T> T requireSingleton(Class<T> clazz) {
+        T instance = getSingleton(clazz);
+        if (instance == null) {
+            throw new IllegalStateException("No singleton registered for " + clazz.getName());
+        }
+        return instance;
+    }
+
     public static Object createOrGetInstance(Class<?> clazz) {
         if (singletonInstances.containsKey(clazz)) {
             return singletonInstances.get(clazz);
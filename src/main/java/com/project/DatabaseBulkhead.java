@@ -0,0 +1,183 @@
+package com.project;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.jooq.DSLContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Limits concurrent database work to the pool size and bounds how many callers may wait behind it, so that
+ * virtual threads fail fast with {@link DatabaseOverloadedException} instead of piling up on Hikari.
+ */
+public class DatabaseBulkhead {
+    private static final int DEFAULT_MAX_QUEUE = 200;
+    private static final long DEFAULT_WAIT_MILLIS = 1000;
+
+    private final int concurrency;
+    private final int maxQueue;
+    private final long waitNanos;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanosTotal = new LongAdder();
+    private final LongAccumulator waitNanosMax = new LongAccumulator(Math::max, 0);
+
+    public DatabaseBulkhead() {
+        this(EnvConfig.getInt("DB_BULKHEAD_CONCURRENCY", EnvConfig.getInt("DB_POOL_SIZE", DatabaseManager.DEFAULT_POOL_SIZE)),
+                EnvConfig.getInt("DB_BULKHEAD_MAX_QUEUE", DEFAULT_MAX_QUEUE),
+                EnvConfig.getLong("DB_BULKHEAD_WAIT_MILLIS", DEFAULT_WAIT_MILLIS));
+    }
+
+    DatabaseBulkhead(int concurrency, int maxQueue, long waitMillis) {
+        if (concurrency < 1 || maxQueue < 0 || waitMillis < 0) {
+            throw new IllegalArgumentException("Invalid database bulkhead limits");
+        }
+        this.concurrency = concurrency;
+        this.maxQueue = maxQueue;
+        this.waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        this.permits = new Semaphore(concurrency, true);
+    }
+
+    public <T> T call(Function<DSLContext, T> query) {
+        acquire(false);
+        try {
+            return query.apply(DatabaseManager.dsl());
+        } finally {
+            release();
+        }
+    }
+
+    public void run(Consumer<DSLContext> query) {
+        call(dsl -> {
+            query.accept(dsl);
+            return null;
+        });
+    }
+
+    public <T> CompletableFuture<T> submit(Function<DSLContext, T> query) {
+        boolean queued;
+        try {
+            queued = !tryAcquire();
+        } catch (DatabaseOverloadedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            if (queued) {
+                acquire(true);
+            }
+            try {
+                return query.apply(DatabaseManager.dsl());
+            } finally {
+                release();
+            }
+        }, executor);
+    }
+
+    private boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            recordWait(0);
+            return true;
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            throw new DatabaseOverloadedException("Database queue is full");
+        }
+        return false;
+    }
+
+    private void acquire(boolean queued) {
+        if (!queued && tryAcquire()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(waitNanos, TimeUnit.NANOSECONDS)) {
+                timedOut.increment();
+                throw new DatabaseOverloadedException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        recordWait(System.nanoTime() - start);
+    }
+
+    private void recordWait(long nanos) {
+        waits.increment();
+        waitNanosTotal.add(nanos);
+        waitNanosMax.accumulate(nanos);
+    }
+
+    private void release() {
+        completed.increment();
+        permits.release();
+    }
+
+    public int getInUse() {
+        return concurrency - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = waits.sum();
+        return count == 0 ? 0 : waitNanosTotal.sum() / 1e6 / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return waitNanosMax.get() / 1e6;
+    }
+
+    public Map<String, Number> stats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("inUse", getInUse());
+        stats.put("waiting", getWaiting());
+        stats.put("completed", getCompleted());
+        stats.put("rejected", getRejected());
+        stats.put("timedOut", getTimedOut());
+        stats.put("avgWaitMillis", getAverageWaitMillis());
+        stats.put("maxWaitMillis", getMaxWaitMillis());
+
+        HikariPoolMXBean pool = getCompleted() + getInUse() > 0 ? DatabaseManager.poolStats() : null;
+        if (pool != null) {
+            stats.put("poolActive", pool.getActiveConnections());
+            stats.put("poolIdle", pool.getIdleConnections());
+            stats.put("poolAwaiting", pool.getThreadsAwaitingConnection());
+        }
+        return stats;
+    }
+}
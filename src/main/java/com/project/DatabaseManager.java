@@ -2,13 +2,18 @@ package com.project;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 
 public class DatabaseManager {
+    public static final int DEFAULT_POOL_SIZE = 10;
 
     private static final HikariDataSource dataSource;
     private static final DSLContext dsl;
@@ -19,8 +24,9 @@ public class DatabaseManager {
         config.setUsername(System.getenv("DB_USERNAME"));
         config.setPassword(System.getenv("DB_PASSWORD"));
 
-        config.setMaximumPoolSize(10);
-        config.setMinimumIdle(2);
+        config.setMaximumPoolSize(EnvConfig.getInt("DB_POOL_SIZE", DEFAULT_POOL_SIZE));
+        config.setMinimumIdle(EnvConfig.getInt("DB_POOL_MIN_IDLE", 2));
+        config.setConnectionTimeout(EnvConfig.getLong("DB_CONNECTION_TIMEOUT_MILLIS", 30000));
         config.setIdleTimeout(30000);
         config.setMaxLifetime(1800000);
 
@@ -36,4 +42,13 @@ public class DatabaseManager {
     public static DataSource dataSource() {
         return dataSource;
     }
+
+    public static HikariPoolMXBean poolStats() {
+        return dataSource.getHikariPoolMXBean();
+    }
+
+    public static Connection dedicatedConnection() throws SQLException {
+        return DriverManager.getConnection(System.getenv("DB_URL"),
+                System.getenv("DB_USERNAME"), System.getenv("DB_PASSWORD"));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.project;
+
+public class DatabaseOverloadedException extends RuntimeException {
+    public DatabaseOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,145 @@
+package com.project;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class EnvelopeEncoder {
+    private static final int MAX_CACHED_PREFIXES = 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final SerializableString FILE_SIZE = new SerializedString(",\"fileSize\":");
+    private static final SerializableString TOTAL_CHUNKS = new SerializedString(",\"totalChunks\":");
+    private static final SerializableString MESSAGE = new SerializedString(",\"message\":");
+    private static final SerializableString CHUNK_SIZE = new SerializedString(",\"chunkSize\":");
+    private static final SerializableString CHUNK_NUM = new SerializedString(",\"chunkNum\":");
+    private static final SerializableString END = new SerializedString("}");
+
+    private final ObjectMapper objectMapper;
+    private final JsonFactory factory;
+    private final ClassValue<ObjectWriter> writers = new ClassValue<>() {
+        @Override
+        protected ObjectWriter computeValue(Class<?> type) {
+            return objectMapper.writerFor(type);
+        }
+    };
+    private final Map<MessageType, Map<String, SerializableString>> prefixes = new EnumMap<>(MessageType.class);
+    private final BlockingQueue<ByteArrayBuilder> buffers = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    public EnvelopeEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.factory = objectMapper.getFactory();
+        for (MessageType type : MessageType.values()) {
+            prefixes.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    public byte[] encodeText(String command, Object message) throws IOException {
+        ByteArrayBuilder buffer = acquire();
+        try {
+            try (JsonGenerator generator = createGenerator(buffer)) {
+                generator.writeRaw(prefix(MessageType.TEXT, command));
+                writeValue(generator, message);
+                generator.writeRaw(END);
+            }
+            return buffer.toByteArray();
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public byte[] encodeMetaData(String command, String fileId, long fileSize, int totalChunks,
+                                 Object metadata) throws IOException {
+        ByteArrayBuilder buffer = acquire();
+        try {
+            try (JsonGenerator generator = createGenerator(buffer)) {
+                generator.writeRaw(prefix(MessageType.META_DATA, command));
+                generator.writeString(fileId);
+                generator.writeRaw(FILE_SIZE);
+                generator.writeNumber(fileSize);
+                generator.writeRaw(TOTAL_CHUNKS);
+                generator.writeNumber(totalChunks);
+                generator.writeRaw(MESSAGE);
+                writeValue(generator, metadata);
+                generator.writeRaw(END);
+            }
+            return buffer.toByteArray();
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public byte[] encodePreChunk(String command, String fileId, int chunkSize, int chunkNum) throws IOException {
+        ByteArrayBuilder buffer = acquire();
+        try {
+            try (JsonGenerator generator = createGenerator(buffer)) {
+                generator.writeRaw(prefix(MessageType.PRE_CHUNK, command));
+                generator.writeString(fileId);
+                generator.writeRaw(CHUNK_SIZE);
+                generator.writeNumber(chunkSize);
+                generator.writeRaw(CHUNK_NUM);
+                generator.writeNumber(chunkNum);
+                generator.writeRaw(END);
+            }
+            return buffer.toByteArray();
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private JsonGenerator createGenerator(ByteArrayBuilder buffer) throws IOException {
+        JsonGenerator generator = factory.createGenerator(buffer);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    private void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            writers.get(value.getClass()).writeValue(generator, value);
+        }
+    }
+
+    private SerializableString prefix(MessageType type, String command) throws IOException {
+        Map<String, SerializableString> cache = prefixes.get(type);
+        SerializableString prefix = command != null ? cache.get(command) : null;
+        if (prefix != null) {
+            return prefix;
+        }
+
+        String encoded = "{\"command\":" + objectMapper.writeValueAsString(command)
+                + ",\"type\":\"" + type.getValue() + "\""
+                + (type == MessageType.TEXT ? ",\"message\":" : ",\"id\":");
+        prefix = new SerializedString(encoded);
+        if (command != null && cache.size() < MAX_CACHED_PREFIXES) {
+            cache.putIfAbsent(command, prefix);
+        }
+        return prefix;
+    }
+
+    private ByteArrayBuilder acquire() {
+        ByteArrayBuilder buffer = buffers.poll();
+        return buffer != null ? buffer : new ByteArrayBuilder(INITIAL_BUFFER_SIZE);
+    }
+
+    private void release(ByteArrayBuilder buffer) {
+        if (buffer.size() <= MAX_RETAINED_BUFFER_SIZE) {
+            buffer.reset();
+            buffers.offer(buffer);
+        }
+    }
+}
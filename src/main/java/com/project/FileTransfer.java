@@ -0,0 +1,153 @@
+package com.project;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class FileTransfer implements Closeable {
+    private final String command;
+    private final int id;
+    private final String fileId;
+    private final long fileSize;
+    private final int chunkSize;
+    private final int totalChunks;
+    private final byte[] data;
+    private final FileChannel channel;
+    private byte[] metaDataMessage;
+    private boolean metaDataSent;
+    private int nextChunk;
+    private volatile long bytesSent;
+    private volatile long startedNanos;
+    private volatile long completedNanos;
+
+    public record TransferStats(String fileId, String command, long fileSize, long bytesSent, long elapsedNanos,
+                                double bytesPerSecond) {
+    }
+
+    private FileTransfer(String command, int id, long fileSize, int chunkSize, byte[] data, FileChannel channel) {
+        this.command = command;
+        this.id = id;
+        this.fileId = "file-" + id;
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.totalChunks = (int) ((fileSize + chunkSize - 1) / chunkSize);
+        this.data = data;
+        this.channel = channel;
+    }
+
+    public static FileTransfer ofBytes(String command, int id, byte[] data, int chunkSize) {
+        return new FileTransfer(command, id, data.length, chunkSize, data, null);
+    }
+
+    public static FileTransfer ofChannel(String command, int id, FileChannel channel, int chunkSize) throws IOException {
+        return new FileTransfer(command, id, channel.size(), chunkSize, null, channel);
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    public byte[] getMetaDataMessage() {
+        return metaDataMessage;
+    }
+
+    public void setMetaDataMessage(byte[] metaDataMessage) {
+        this.metaDataMessage = metaDataMessage;
+    }
+
+    public boolean isMetaDataSent() {
+        return metaDataSent;
+    }
+
+    public void markMetaDataSent() {
+        metaDataSent = true;
+        startedNanos = System.nanoTime();
+        if (totalChunks == 0) {
+            completedNanos = startedNanos;
+        }
+    }
+
+    public int getNextChunkNum() {
+        return nextChunk;
+    }
+
+    public int getNextChunkSize() {
+        return (int) Math.min(chunkSize, fileSize - (long) nextChunk * chunkSize);
+    }
+
+    public long getBufferedBytes() {
+        long buffered = metaDataSent || metaDataMessage == null ? 0 : metaDataMessage.length;
+        if (data != null) {
+            buffered += Math.max(0, fileSize - (long) nextChunk * chunkSize);
+        }
+        return buffered;
+    }
+
+    public boolean isDone() {
+        return metaDataSent && nextChunk >= totalChunks;
+    }
+
+    public WebSocketSession.MessageWrapper takeChunk() {
+        long offset = (long) nextChunk * chunkSize;
+        int length = getNextChunkSize();
+        nextChunk++;
+        bytesSent += length;
+        if (nextChunk == totalChunks) {
+            completedNanos = System.nanoTime();
+        }
+
+        if (channel != null) {
+            boolean last = nextChunk == totalChunks;
+            return WebSocketSession.MessageWrapper.file(new FileRegion(channel, offset, length, last));
+        }
+        return WebSocketSession.MessageWrapper.binary(ByteBuffer.wrap(data, (int) offset, length));
+    }
+
+    public TransferStats stats() {
+        long started = startedNanos;
+        long elapsed = started == 0 ? 0 : (completedNanos != 0 ? completedNanos : System.nanoTime()) - started;
+        long sent = bytesSent;
+        double bytesPerSecond = elapsed > 0 ? sent * 1_000_000_000.0 / elapsed : 0;
+        return new TransferStats(fileId, command, fileSize, sent, elapsed, bytesPerSecond);
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            FileRegion.closeQuietly(channel);
+        }
+    }
+
+    public record FileRegion(FileChannel channel, long position, long length, boolean closeAfterWrite) {
+
+        public void release() {
+            if (closeAfterWrite) {
+                closeQuietly(channel);
+            }
+        }
+
+        static void closeQuietly(FileChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
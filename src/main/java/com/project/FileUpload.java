@@ -0,0 +1,140 @@
+package com.project;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.UUID;
+
+@Slf4j
+public class FileUpload {
+    private static final Path UPLOAD_DIR = Path.of(
+            EnvConfig.getString("UPLOAD_TMP_DIR", System.getProperty("java.io.tmpdir")));
+
+    private final String fileId;
+    private final String command;
+    private final WebSocketRouteRegistry.RouteHandler handler;
+    private final Object metadata;
+    private final Set<UUID> owners;
+    private final long totalSize;
+    private final int totalChunks;
+    private int receivedChunks;
+    private long receivedBytes;
+    private int writtenChunks;
+    private long writtenBytes;
+    private Path file;
+    private FileChannel channel;
+    private volatile boolean discarded;
+
+    public record Status(String id, int receivedChunks, long receivedBytes) {
+    }
+
+    public FileUpload(String fileId, String command, WebSocketRouteRegistry.RouteHandler handler,
+                      long totalSize, int totalChunks, Object metadata, Set<UUID> owners) {
+        this.fileId = fileId;
+        this.command = command;
+        this.handler = handler;
+        this.totalSize = totalSize;
+        this.totalChunks = totalChunks;
+        this.metadata = metadata;
+        this.owners = owners;
+    }
+
+    public void open() throws IOException {
+        Files.createDirectories(UPLOAD_DIR);
+        file = Files.createTempFile(UPLOAD_DIR, "upload-", ".part");
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+    }
+
+    public void reopen() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        channel.truncate(writtenBytes);
+        channel.position(writtenBytes);
+    }
+
+    /**
+     * Counts a chunk against the declared size on the reading thread; the bytes follow through {@link #writeChunk}.
+     */
+    public void acceptChunk(int length) {
+        if (receivedBytes + length > totalSize) {
+            throw new IllegalStateException("File " + fileId + " exceeds declared size of " + totalSize);
+        }
+        receivedChunks++;
+        receivedBytes += length;
+    }
+
+    public void writeChunk(ByteBuffer chunk) throws IOException {
+        int length = chunk.remaining();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        writtenChunks++;
+        writtenBytes += length;
+    }
+
+    public boolean matches(String command, long totalSize, int totalChunks) {
+        return this.command.equals(command) && this.totalSize == totalSize && this.totalChunks == totalChunks;
+    }
+
+    public boolean isComplete() {
+        return receivedChunks == totalChunks;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public WebSocketRouteRegistry.RouteHandler getHandler() {
+        return handler;
+    }
+
+    public Object getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Users the uploading session was authenticated as when the upload started; empty for anonymous sessions.
+     */
+    public Set<UUID> getOwners() {
+        return owners;
+    }
+
+    public int getReceivedChunks() {
+        return receivedChunks;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Status status() {
+        return new Status(fileId, writtenChunks, writtenBytes);
+    }
+
+    public void closeChannel() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.close();
+        }
+    }
+
+    public boolean isDiscarded() {
+        return discarded;
+    }
+
+    public void discard() {
+        discarded = true;
+        try {
+            closeChannel();
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete upload file {}", file, e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.project;
 
+import java.nio.file.Path;
 import java.util.Collection;
 
 public class MultiSessionWrapper implements SessionSender {
@@ -11,11 +12,23 @@ public class MultiSessionWrapper implements SessionSender {
 
     @Override
     public void send(String command, Object message) {
-        sessions.forEach(session -> session.send(command, message));
+        if (sessions.isEmpty()) {
+            return;
+        }
+
+        SharedMessage shared = new SharedMessage(command, message);
+        for (WebSocketSession session : sessions) {
+            shared.enqueue(session);
+        }
     }
 
     @Override
     public void sendFile(String command, byte[] fileData, Object metadata) {
         sessions.forEach(session -> session.sendFile(command, fileData, metadata));
     }
+
+    @Override
+    public void sendFile(String command, Path file, Object metadata) {
+        sessions.forEach(session -> session.sendFile(command, file, metadata));
+    }
 }
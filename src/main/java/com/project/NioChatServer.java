@@ -0,0 +1,353 @@
+package com.project;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Slf4j
+public class NioChatServer {
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final int port;
+    private final ExecutorService threadPool;
+    private final WebSocketSessionManager sessionManager;
+    private final EventLoop[] eventLoops;
+    private volatile boolean running = true;
+
+    public NioChatServer(int port, int eventLoopCount, ExecutorService threadPool,
+                         WebSocketSessionManager sessionManager) throws IOException {
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("Event loop count must be positive");
+        }
+        this.port = port;
+        this.threadPool = threadPool;
+        this.sessionManager = sessionManager;
+        this.eventLoops = new EventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new EventLoop(Selector.open());
+        }
+    }
+
+    public void start() throws IOException {
+        for (int i = 0; i < eventLoops.length; i++) {
+            Thread.ofPlatform().name("nio-event-loop-" + i).daemon(true).start(eventLoops[i]);
+        }
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+            log.info("Server started on port {} (nio, {} event loops)", port, eventLoops.length);
+
+            int next = 0;
+            while (running) {
+                SocketChannel channel = serverChannel.accept();
+                ServerMetrics.connectionAccepted();
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.selector.wakeup();
+        }
+    }
+
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    NioConnection connection = new NioConnection(channel, this);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    log.info("[{}] New connection.", connection.clientInfo);
+                } catch (IOException e) {
+                    log.error("Failed to register connection: ", e);
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            WebSocketSession.markNonBlockingThread();
+            try {
+                while (running) {
+                    selector.select();
+                    runTasks();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                log.error("Event loop error: ", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof NioConnection connection) {
+                        connection.close();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private class NioConnection {
+        private final SocketChannel channel;
+        private final EventLoop eventLoop;
+        private final String clientInfo;
+        private final WebSocketSession session = new WebSocketSession();
+        private final WebSocketFrameEncoder encoder = new WebSocketFrameEncoder();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private SelectionKey key;
+        private final WebSocketFrameDecoder decoder = new WebSocketFrameDecoder();
+        private WebSocketMessageDispatcher dispatcher;
+        private boolean closed;
+        private boolean closeAfterFlush;
+        private boolean readPaused;
+
+        NioConnection(SocketChannel channel, EventLoop eventLoop) throws IOException {
+            this.channel = channel;
+            this.eventLoop = eventLoop;
+            InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+            this.clientInfo = remote.getAddress().getHostAddress() + ":" + remote.getPort();
+        }
+
+        void onReadable() {
+            try {
+                int read = channel.read(decoder.writableBuffer());
+                if (read == -1) {
+                    close();
+                    return;
+                }
+
+                if (dispatcher == null && !closeAfterFlush) {
+                    processHandshake();
+                }
+                if (dispatcher != null && !closed) {
+                    processFrames();
+                }
+            } catch (IOException e) {
+                log.error("[{}] WebSocket error: ", clientInfo, e);
+                close();
+            }
+        }
+
+        private void processHandshake() throws IOException {
+            String requestHead = decoder.decodeRequestHead(WebSocketHandshake.MAX_REQUEST_SIZE);
+            if (requestHead == null) {
+                return;
+            }
+
+            WebSocketHandshake handshake = WebSocketHandshake.parse(requestHead);
+            if (handshake.isMetricsRequest()) {
+                closeAfterFlush = true;
+                encoder.add(ByteBuffer.wrap(ServerMetrics.httpResponse()));
+                flushScheduled.set(true);
+                flush();
+                return;
+            }
+            if (!handshake.isValid()) {
+                ServerMetrics.handshakeFailed();
+                log.error("[{}] WebSocket handshake failed!", clientInfo);
+                close();
+                return;
+            }
+
+            dispatcher = new WebSocketMessageDispatcher(handshake.getPath(), session, sessionManager, threadPool,
+                    clientInfo, new SerialExecutor(threadPool));
+            dispatcher.setUploadDrainedListener(() -> eventLoop.execute(this::resumeReading));
+            String protocol = handshake.selectProtocol(BinaryProtocol.NAME);
+            PerMessageDeflate deflate = PerMessageDeflate.negotiate(handshake.getHeader("Sec-WebSocket-Extensions"));
+            encoder.add(ByteBuffer.wrap(handshake.response(protocol, deflate != null ? deflate.responseHeader() : null)));
+            if (deflate != null) {
+                decoder.setDeflate(deflate);
+                encoder.setDeflate(deflate);
+            }
+            if (protocol != null) {
+                session.useBinaryProtocol(WebSocketRouteRegistry.getCommandTable(handshake.getPath()));
+            }
+            session.setOutboundListener(this::scheduleFlush);
+            ServerMetrics.sessionOpened(session);
+            log.info("[{}] WebSocket handshake successful! Route: {}", clientInfo, handshake.getPath());
+
+            flushScheduled.set(true);
+            flush();
+        }
+
+        private void processFrames() throws IOException {
+            sessionManager.setCurrentSession(session);
+
+            while (!closed && !dispatcher.isUploadBacklogged() && decoder.nextFrame()) {
+                if (decoder.getOpcode() == 0x08) {
+                    close();
+                    return;
+                }
+
+                dispatcher.handleFrame(decoder.getOpcode(), decoder.getPayloadArray(),
+                        decoder.getPayloadOffset(), decoder.getPayloadLength());
+            }
+
+            if (!closed && dispatcher.isUploadBacklogged()) {
+                readPaused = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        private void resumeReading() {
+            if (closed || !readPaused || dispatcher.isUploadBacklogged()) {
+                return;
+            }
+            readPaused = false;
+            try {
+                processFrames();
+            } catch (IOException e) {
+                log.error("[{}] WebSocket error: ", clientInfo, e);
+                close();
+                return;
+            }
+            if (!readPaused && !closed) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        private int readInterest() {
+            return readPaused ? 0 : SelectionKey.OP_READ;
+        }
+
+        void scheduleFlush() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                eventLoop.execute(this::flush);
+            }
+        }
+
+        void flush() {
+            if (closed) {
+                return;
+            }
+            if (session.isClosed()) {
+                close();
+                return;
+            }
+
+            try {
+                while (true) {
+                    if (encoder.isEmpty()) {
+                        WebSocketSession.MessageWrapper message;
+                        while (encoder.hasCapacity() && (message = session.poll()) != null) {
+                            encoder.encode(message);
+                        }
+                        if (encoder.isEmpty()) {
+                            break;
+                        }
+                    }
+
+                    if (!encoder.writeTo(channel)) {
+                        key.interestOps(readInterest() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+
+                if (closeAfterFlush) {
+                    close();
+                    return;
+                }
+                key.interestOps(readInterest());
+                flushScheduled.set(false);
+                if (session.hasPendingMessages()) {
+                    scheduleFlush();
+                }
+            } catch (IOException e) {
+                log.error("[{}] Output handler error: ", clientInfo, e);
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            session.close();
+            boolean atFrameBoundary = encoder.isEmpty();
+            encoder.release();
+            decoder.release();
+            ServerMetrics.sessionClosed(session);
+            sessionManager.unregisterSession(session);
+            if (dispatcher != null) {
+                dispatcher.close();
+            }
+
+            try {
+                if (dispatcher != null && atFrameBoundary && channel.isOpen()) {
+                    channel.write(WebSocketFrameEncoder.closeFrame());
+                }
+            } catch (IOException ignored) {
+            }
+
+            try {
+                if (key != null) {
+                    key.cancel();
+                }
+                channel.close();
+                log.info("[{}] Connection closed gracefully.", clientInfo);
+            } catch (IOException e) {
+                log.error("[{}] Error closing client socket: ", clientInfo, e);
+            }
+        }
+    }
+}
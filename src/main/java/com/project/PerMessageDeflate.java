@@ -0,0 +1,229 @@
+package com.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * RFC 7692 permessage-deflate for a single connection. java.util.zip always uses a 32KB window, so offers
+ * asking for a smaller server_max_window_bits are declined; client_max_window_bits only limits the peer.
+ */
+public class PerMessageDeflate {
+    public static final String EXTENSION_NAME = "permessage-deflate";
+    private static final byte[] EMPTY_BLOCK_TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+    private static final int MAX_WINDOW_BITS = 15;
+    private static final int MIN_INFLATE_BUFFER = 4 * 1024;
+    private static final int MAX_RETAINED_INFLATE_BUFFER = 128 * 1024;
+
+    private static final boolean ENABLED = EnvConfig.getBoolean("WS_DEFLATE_ENABLED", true);
+    private static final int THRESHOLD = EnvConfig.getInt("WS_DEFLATE_THRESHOLD", 256);
+    private static final int LEVEL = EnvConfig.getInt("WS_DEFLATE_LEVEL", 6);
+    private static final int CLIENT_MAX_WINDOW_BITS = EnvConfig.getInt("WS_DEFLATE_CLIENT_MAX_WINDOW_BITS", MAX_WINDOW_BITS);
+    private static final boolean SERVER_NO_CONTEXT_TAKEOVER =
+            EnvConfig.getBoolean("WS_DEFLATE_SERVER_NO_CONTEXT_TAKEOVER", false);
+    private static final boolean CLIENT_NO_CONTEXT_TAKEOVER =
+            EnvConfig.getBoolean("WS_DEFLATE_CLIENT_NO_CONTEXT_TAKEOVER", false);
+
+    private final boolean serverNoContextTakeover;
+    private final boolean clientNoContextTakeover;
+    private final int clientMaxWindowBits;
+    private final int threshold;
+    private final int level;
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] inflated = new byte[MIN_INFLATE_BUFFER];
+
+    public PerMessageDeflate(boolean serverNoContextTakeover, boolean clientNoContextTakeover,
+                             int clientMaxWindowBits, int threshold) {
+        this(serverNoContextTakeover, clientNoContextTakeover, clientMaxWindowBits, threshold, LEVEL);
+    }
+
+    public PerMessageDeflate(boolean serverNoContextTakeover, boolean clientNoContextTakeover,
+                             int clientMaxWindowBits, int threshold, int level) {
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        this.clientMaxWindowBits = clientMaxWindowBits;
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    public static PerMessageDeflate negotiate(String extensionsHeader) {
+        if (!ENABLED || extensionsHeader == null) {
+            return null;
+        }
+        if (CLIENT_MAX_WINDOW_BITS < 8 || CLIENT_MAX_WINDOW_BITS > MAX_WINDOW_BITS) {
+            throw new IllegalArgumentException("WS_DEFLATE_CLIENT_MAX_WINDOW_BITS must be between 8 and 15");
+        }
+
+        for (String offer : extensionsHeader.split(",")) {
+            PerMessageDeflate accepted = accept(offer.split(";"));
+            if (accepted != null) {
+                return accepted;
+            }
+        }
+        return null;
+    }
+
+    private static PerMessageDeflate accept(String[] offer) {
+        if (!offer[0].trim().equalsIgnoreCase(EXTENSION_NAME)) {
+            return null;
+        }
+
+        boolean serverNoContextTakeover = SERVER_NO_CONTEXT_TAKEOVER;
+        boolean clientNoContextTakeover = CLIENT_NO_CONTEXT_TAKEOVER;
+        int clientMaxWindowBits = 0;
+
+        for (int i = 1; i < offer.length; i++) {
+            String param = offer[i].trim();
+            int eq = param.indexOf('=');
+            String name = (eq < 0 ? param : param.substring(0, eq)).trim().toLowerCase(Locale.ROOT);
+            String value = eq < 0 ? null : param.substring(eq + 1).trim().replace("\"", "");
+
+            switch (name) {
+                case "server_no_context_takeover" -> serverNoContextTakeover = true;
+                case "client_no_context_takeover" -> clientNoContextTakeover = true;
+                case "server_max_window_bits" -> {
+                    if (windowBits(value) != MAX_WINDOW_BITS) {
+                        return null;
+                    }
+                }
+                case "client_max_window_bits" -> clientMaxWindowBits = value == null
+                        ? CLIENT_MAX_WINDOW_BITS
+                        : Math.min(windowBits(value), CLIENT_MAX_WINDOW_BITS);
+                default -> {
+                    return null;
+                }
+            }
+        }
+
+        return new PerMessageDeflate(serverNoContextTakeover, clientNoContextTakeover, clientMaxWindowBits, THRESHOLD);
+    }
+
+    private static int windowBits(String value) {
+        try {
+            int bits = value == null ? -1 : Integer.parseInt(value);
+            return bits >= 8 && bits <= MAX_WINDOW_BITS ? bits : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public String responseHeader() {
+        StringBuilder header = new StringBuilder(EXTENSION_NAME);
+        if (serverNoContextTakeover) {
+            header.append("; server_no_context_takeover");
+        }
+        if (clientNoContextTakeover) {
+            header.append("; client_no_context_takeover");
+        }
+        if (clientMaxWindowBits > 0 && clientMaxWindowBits < MAX_WINDOW_BITS) {
+            header.append("; client_max_window_bits=").append(clientMaxWindowBits);
+        }
+        return header.toString();
+    }
+
+    public boolean shouldCompress(long length) {
+        return length >= threshold;
+    }
+
+    public static int maxCompressedLength(int length) {
+        return length + (length >> 12) * 5 + 64;
+    }
+
+    public int compress(ByteBuffer header, ByteBuffer payload, ByteBuffer output) throws IOException {
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+
+        int start = output.position();
+        if (header != null) {
+            deflate(header, output, Deflater.NO_FLUSH);
+        }
+        deflate(payload, output, Deflater.SYNC_FLUSH);
+
+        if (serverNoContextTakeover) {
+            deflater.reset();
+        }
+
+        int length = output.position() - start - EMPTY_BLOCK_TAIL.length;
+        output.position(start + length);
+        return length;
+    }
+
+    private void deflate(ByteBuffer input, ByteBuffer output, int flush) throws IOException {
+        deflater.setInput(input.duplicate());
+        do {
+            if (!output.hasRemaining()) {
+                throw new IOException("Compression buffer exhausted");
+            }
+            deflater.deflate(output, flush);
+        } while (!deflater.needsInput() || !output.hasRemaining());
+    }
+
+    public int decompress(byte[] data, int offset, int length, int maxLength) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        if (inflated.length > MAX_RETAINED_INFLATE_BUFFER) {
+            inflated = new byte[MIN_INFLATE_BUFFER];
+        }
+
+        try {
+            int written = inflate(data, offset, length, maxLength, 0);
+            written = inflate(EMPTY_BLOCK_TAIL, 0, EMPTY_BLOCK_TAIL.length, maxLength, written);
+
+            if (clientNoContextTakeover) {
+                inflater.reset();
+            }
+            return written;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed payload", e);
+        }
+    }
+
+    public byte[] getInflated() {
+        return inflated;
+    }
+
+    private int inflate(byte[] data, int offset, int length, int maxLength, int written)
+            throws IOException, DataFormatException {
+        inflater.setInput(data, offset, length);
+        while (true) {
+            if (written == inflated.length) {
+                if (written >= maxLength) {
+                    throw new IOException("Payload too large");
+                }
+                inflated = Arrays.copyOf(inflated, (int) Math.min(maxLength, (long) inflated.length * 2));
+            }
+            int n = inflater.inflate(inflated, written, inflated.length - written);
+            written += n;
+            if (n == 0) {
+                if (inflater.needsInput()) {
+                    break;
+                }
+                if (inflater.finished() || inflater.needsDictionary()) {
+                    throw new DataFormatException("Unexpected end of deflate stream");
+                }
+            }
+        }
+        return written;
+    }
+
+    public void releaseDeflater() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    public void releaseInflater() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package com.project;
+
+import com.fasterxml.jackson.core.json.JsonWriteFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * PostgreSQL LISTEN/NOTIFY backplane. Presence is stored in chat_presence and mirrored in memory from the
+ * chat_presence channel; messages for a node are batched into NOTIFYs on that node's own channel, and
+ * batches above the 8000 byte NOTIFY limit go through chat_outbox. If a batch fails to commit, the node's
+ * presence rows are rebuilt from the local user set before anything else is sent.
+ */
+@Slf4j
+public class PostgresBackplane implements ClusterBackplane {
+    private static final String PRESENCE_CHANNEL = "chat_presence";
+    private static final String NODE_CHANNEL_PREFIX = "chat_node_";
+    private static final String OUTBOX_REFERENCE = "#";
+    private static final int MAX_NOTIFY_PAYLOAD = 7900;
+    private static final int PRESENCE_IDS_PER_NOTIFY = 90;
+    private static final long POLL_MILLIS = 500;
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final Pattern NODE_ID = Pattern.compile("[A-Za-z0-9_-]{1,40}");
+
+    private static final ObjectMapper objectMapper = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(JsonWriteFeature.ESCAPE_NON_ASCII)
+            .build();
+
+    private final String nodeId;
+    private final long batchMillis;
+    private final int batchMax;
+    private final int maxPendingDeliveries;
+    private final long heartbeatMillis;
+    private final long nodeTimeoutMillis;
+
+    private final Map<UUID, Set<String>> remoteUsers = new ConcurrentHashMap<>();
+    private final Map<String, Long> nodeHeartbeats = new ConcurrentHashMap<>();
+    private final Set<UUID> localUsers = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingDeliveries = new AtomicInteger();
+    private volatile boolean running;
+    private boolean presenceStale;
+    private Receiver receiver;
+    private Thread sender;
+    private Thread listener;
+
+    private sealed interface Event permits Presence, Delivery {
+    }
+
+    private record Presence(UUID userId, boolean online) implements Event {
+    }
+
+    private record Delivery(String node, Collection<UUID> userIds, String command, JsonNode message) implements Event {
+    }
+
+    public PostgresBackplane() {
+        this(EnvConfig.getString("CLUSTER_NODE_ID", UUID.randomUUID().toString()),
+                EnvConfig.getLong("CLUSTER_BATCH_MILLIS", 5),
+                EnvConfig.getInt("CLUSTER_BATCH_MAX", 256),
+                EnvConfig.getInt("CLUSTER_MAX_PENDING_DELIVERIES", 100_000),
+                EnvConfig.getLong("CLUSTER_HEARTBEAT_SECONDS", 10) * 1000,
+                EnvConfig.getLong("CLUSTER_NODE_TIMEOUT_SECONDS", 30) * 1000);
+    }
+
+    public PostgresBackplane(String nodeId, long batchMillis, int batchMax, int maxPendingDeliveries,
+                             long heartbeatMillis, long nodeTimeoutMillis) {
+        if (!NODE_ID.matcher(nodeId).matches()) {
+            throw new IllegalArgumentException("Invalid cluster node id: " + nodeId);
+        }
+        if (batchMax < 1 || heartbeatMillis <= 0 || nodeTimeoutMillis <= heartbeatMillis) {
+            throw new IllegalArgumentException("Invalid cluster backplane settings");
+        }
+        this.nodeId = nodeId;
+        this.batchMillis = batchMillis;
+        this.batchMax = batchMax;
+        this.maxPendingDeliveries = maxPendingDeliveries;
+        this.heartbeatMillis = heartbeatMillis;
+        this.nodeTimeoutMillis = nodeTimeoutMillis;
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        initSchema();
+
+        running = true;
+        listener = Thread.ofPlatform().name("cluster-backplane-listener").daemon(true).start(this::listen);
+        sender = Thread.ofPlatform().name("cluster-backplane-sender").daemon(true).start(this::drain);
+        log.info("Cluster backplane started for node {}", nodeId);
+    }
+
+    private void initSchema() {
+        DSLContext dsl = DatabaseManager.dsl();
+        dsl.execute("create table if not exists chat_node (node_id text primary key, heartbeat_at timestamptz not null)");
+        dsl.execute("create table if not exists chat_presence (user_id uuid not null, node_id text not null, "
+                + "primary key (user_id, node_id))");
+        dsl.execute("create table if not exists chat_outbox (id bigserial primary key, node_id text not null, "
+                + "payload text not null, created_at timestamptz not null default now())");
+
+        dsl.transaction(configuration -> {
+            DSLContext tx = DSL.using(configuration);
+            tx.execute("delete from chat_presence where node_id = ?", nodeId);
+            tx.execute("delete from chat_outbox where node_id = ?", nodeId);
+            tx.execute("insert into chat_node (node_id, heartbeat_at) values (?, now()) "
+                    + "on conflict (node_id) do update set heartbeat_at = now()", nodeId);
+            notify(tx, PRESENCE_CHANNEL, objectMapper.createObjectNode().put("node", nodeId).put("left", true));
+        });
+    }
+
+    private static String nodeChannel(String node) {
+        return NODE_CHANNEL_PREFIX + node;
+    }
+
+    @Override
+    public void userOnline(UUID userId) {
+        localUsers.add(userId);
+        events.add(new Presence(userId, true));
+    }
+
+    @Override
+    public void userOffline(UUID userId) {
+        localUsers.remove(userId);
+        events.add(new Presence(userId, false));
+    }
+
+    @Override
+    public boolean isRemote(UUID userId) {
+        return remoteUsers.containsKey(userId);
+    }
+
+    @Override
+    public void forward(Collection<UUID> userIds, String command, Object message) {
+        Map<String, List<UUID>> targets = null;
+        for (UUID userId : userIds) {
+            Set<String> nodes = remoteUsers.get(userId);
+            if (nodes == null) {
+                continue;
+            }
+            for (String node : nodes) {
+                if (targets == null) {
+                    targets = new HashMap<>();
+                }
+                targets.computeIfAbsent(node, key -> new ArrayList<>()).add(userId);
+            }
+        }
+        if (targets == null) {
+            return;
+        }
+
+        JsonNode tree = objectMapper.valueToTree(message);
+        targets.forEach((node, recipients) -> {
+            if (pendingDeliveries.incrementAndGet() > maxPendingDeliveries) {
+                pendingDeliveries.decrementAndGet();
+                log.warn("Cluster backplane queue full, dropping {} for node {}", command, node);
+                return;
+            }
+            events.add(new Delivery(node, recipients, command, tree));
+        });
+    }
+
+    private void drain() {
+        List<Event> batch = new ArrayList<>(batchMax);
+        long nextHeartbeat = System.currentTimeMillis() + heartbeatMillis;
+
+        while (running || !events.isEmpty()) {
+            try {
+                if (presenceStale) {
+                    resyncPresence();
+                    presenceStale = false;
+                }
+
+                Event first = events.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    events.drainTo(batch, batchMax - batch.size());
+                    if (batch.size() < batchMax && batchMillis > 0) {
+                        Thread.sleep(batchMillis);
+                        events.drainTo(batch, batchMax - batch.size());
+                    }
+                    flush(batch);
+                }
+
+                if (running && System.currentTimeMillis() >= nextHeartbeat) {
+                    heartbeat();
+                    nextHeartbeat = System.currentTimeMillis() + heartbeatMillis;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to publish {} cluster events", batch.size(), e);
+                if (batch.stream().anyMatch(Presence.class::isInstance)) {
+                    presenceStale = true;
+                }
+                if (presenceStale && !pause(RECONNECT_MILLIS)) {
+                    return;
+                }
+            } finally {
+                for (Event event : batch) {
+                    if (event instanceof Delivery) {
+                        pendingDeliveries.decrementAndGet();
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Event> batch) {
+        Map<UUID, Boolean> presence = new LinkedHashMap<>();
+        Map<String, List<Delivery>> deliveries = new HashMap<>();
+        for (Event event : batch) {
+            switch (event) {
+                case Presence update -> presence.put(update.userId(), update.online());
+                case Delivery delivery -> deliveries.computeIfAbsent(delivery.node(), key -> new ArrayList<>()).add(delivery);
+            }
+        }
+
+        DatabaseManager.dsl().transaction(configuration -> {
+            DSLContext tx = DSL.using(configuration);
+            if (!presence.isEmpty()) {
+                publishPresence(tx, presence);
+            }
+            deliveries.forEach((node, messages) -> publishDeliveries(tx, node, messages));
+        });
+    }
+
+    /**
+     * Replaces this node's presence after a failed batch. The failed updates cannot simply be re-queued behind
+     * newer ones for the same users, so the node republishes everything from localUsers instead.
+     */
+    private void resyncPresence() {
+        Map<UUID, Boolean> presence = new LinkedHashMap<>();
+        localUsers.forEach(userId -> presence.put(userId, true));
+
+        DatabaseManager.dsl().transaction(configuration -> {
+            DSLContext tx = DSL.using(configuration);
+            tx.execute("delete from chat_presence where node_id = ?", nodeId);
+            notify(tx, PRESENCE_CHANNEL, objectMapper.createObjectNode().put("node", nodeId).put("reset", true));
+            if (!presence.isEmpty()) {
+                publishPresence(tx, presence);
+            }
+        });
+        log.info("Republished presence of {} users for node {}", presence.size(), nodeId);
+    }
+
+    private static boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void publishPresence(DSLContext tx, Map<UUID, Boolean> presence) {
+        List<UUID> online = new ArrayList<>();
+        List<UUID> offline = new ArrayList<>();
+        presence.forEach((userId, isOnline) -> (isOnline ? online : offline).add(userId));
+
+        if (!online.isEmpty()) {
+            tx.execute("insert into chat_presence (user_id, node_id) select unnest(?), ? on conflict do nothing",
+                    online.toArray(UUID[]::new), nodeId);
+        }
+        if (!offline.isEmpty()) {
+            tx.execute("delete from chat_presence where node_id = ? and user_id = any(?)",
+                    nodeId, offline.toArray(UUID[]::new));
+        }
+
+        for (int i = 0; i < Math.max(online.size(), offline.size()); i += PRESENCE_IDS_PER_NOTIFY) {
+            ObjectNode payload = objectMapper.createObjectNode().put("node", nodeId);
+            addIds(payload.putArray("online"), online, i);
+            addIds(payload.putArray("offline"), offline, i);
+            notify(tx, PRESENCE_CHANNEL, payload);
+        }
+    }
+
+    private static void addIds(ArrayNode target, List<UUID> ids, int from) {
+        for (int i = from; i < Math.min(from + PRESENCE_IDS_PER_NOTIFY, ids.size()); i++) {
+            target.add(ids.get(i).toString());
+        }
+    }
+
+    private void publishDeliveries(DSLContext tx, String node, List<Delivery> deliveries) {
+        String channel = nodeChannel(node);
+        StringBuilder batch = new StringBuilder("[");
+
+        for (Delivery delivery : deliveries) {
+            ObjectNode entry = objectMapper.createObjectNode();
+            ArrayNode users = entry.putArray("users");
+            delivery.userIds().forEach(userId -> users.add(userId.toString()));
+            entry.put("command", delivery.command());
+            entry.set("message", delivery.message());
+            String encoded = entry.toString();
+
+            if (encoded.length() + 2 > MAX_NOTIFY_PAYLOAD) {
+                Record outbox = tx.fetchOne("insert into chat_outbox (node_id, payload) values (?, ?) returning id",
+                        node, "[" + encoded + "]");
+                notify(tx, channel, OUTBOX_REFERENCE + outbox.get(0, Long.class));
+                continue;
+            }
+            if (batch.length() + encoded.length() + 1 > MAX_NOTIFY_PAYLOAD) {
+                notify(tx, channel, batch.append(']').toString());
+                batch.setLength(1);
+            }
+            if (batch.length() > 1) {
+                batch.append(',');
+            }
+            batch.append(encoded);
+        }
+
+        if (batch.length() > 1) {
+            notify(tx, channel, batch.append(']').toString());
+        }
+    }
+
+    private static void notify(DSLContext tx, String channel, Object payload) {
+        tx.fetch("select pg_notify(?, ?)", channel, payload.toString());
+    }
+
+    private void heartbeat() {
+        double timeoutSeconds = nodeTimeoutMillis / 1000.0;
+        boolean rejoined = DatabaseManager.dsl().transactionResult(configuration -> {
+            DSLContext tx = DSL.using(configuration);
+            int updated = tx.execute("update chat_node set heartbeat_at = now() where node_id = ?", nodeId);
+            if (updated == 0) {
+                tx.execute("insert into chat_node (node_id, heartbeat_at) values (?, now())", nodeId);
+            }
+            notify(tx, PRESENCE_CHANNEL, objectMapper.createObjectNode().put("node", nodeId));
+
+            tx.execute("delete from chat_presence where node_id in (select node_id from chat_node "
+                    + "where heartbeat_at < now() - make_interval(secs => ?))", timeoutSeconds);
+            tx.execute("delete from chat_node where heartbeat_at < now() - make_interval(secs => ?)", timeoutSeconds);
+            tx.execute("delete from chat_outbox where created_at < now() - make_interval(secs => ?)", timeoutSeconds);
+            return updated == 0;
+        });
+
+        if (rejoined) {
+            log.warn("Node {} was expired from the cluster, republishing {} users", nodeId, localUsers.size());
+            localUsers.forEach(userId -> events.add(new Presence(userId, true)));
+        }
+    }
+
+    private void listen() {
+        // Deliveries for every session on this node run here, so one full session queue must not stall the rest.
+        WebSocketSession.markNonBlockingThread();
+        while (running) {
+            try (Connection connection = DatabaseManager.dedicatedConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + PRESENCE_CHANNEL);
+                    statement.execute("LISTEN \"" + nodeChannel(nodeId) + "\"");
+                }
+                loadPresence();
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                long nextExpiry = System.currentTimeMillis() + heartbeatMillis;
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) POLL_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            handleNotification(notification);
+                        }
+                    }
+                    if (System.currentTimeMillis() >= nextExpiry) {
+                        expireNodes();
+                        nextExpiry = System.currentTimeMillis() + heartbeatMillis;
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.error("Cluster listener connection failed, reconnecting", e);
+                if (!pause(RECONNECT_MILLIS)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void loadPresence() {
+        remoteUsers.clear();
+        nodeHeartbeats.clear();
+        long now = System.currentTimeMillis();
+
+        for (Record record : DatabaseManager.dsl().fetch("select p.user_id, p.node_id from chat_presence p "
+                        + "join chat_node n on n.node_id = p.node_id "
+                        + "where p.node_id <> ? and n.heartbeat_at > now() - make_interval(secs => ?)",
+                nodeId, nodeTimeoutMillis / 1000.0)) {
+            String node = record.get(1, String.class);
+            remoteUsers.computeIfAbsent(record.get(0, UUID.class), key -> ConcurrentHashMap.newKeySet()).add(node);
+            nodeHeartbeats.putIfAbsent(node, now);
+        }
+    }
+
+    private void handleNotification(PGNotification notification) {
+        try {
+            if (PRESENCE_CHANNEL.equals(notification.getName())) {
+                applyPresence(objectMapper.readTree(notification.getParameter()));
+            } else {
+                deliver(notification.getParameter());
+            }
+        } catch (Exception e) {
+            log.error("Failed to handle cluster notification on {}", notification.getName(), e);
+        }
+    }
+
+    private void applyPresence(JsonNode update) {
+        String node = update.path("node").asText();
+        if (nodeId.equals(node)) {
+            return;
+        }
+        if (update.path("left").asBoolean()) {
+            removeNode(node);
+            return;
+        }
+        if (update.path("reset").asBoolean()) {
+            removeNode(node);
+        }
+
+        nodeHeartbeats.put(node, System.currentTimeMillis());
+        for (JsonNode userId : update.path("offline")) {
+            removeRemote(UUID.fromString(userId.asText()), node);
+        }
+        for (JsonNode userId : update.path("online")) {
+            remoteUsers.computeIfAbsent(UUID.fromString(userId.asText()), key -> ConcurrentHashMap.newKeySet()).add(node);
+        }
+    }
+
+    private void removeRemote(UUID userId, String node) {
+        remoteUsers.computeIfPresent(userId, (key, nodes) -> {
+            nodes.remove(node);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    private void removeNode(String node) {
+        nodeHeartbeats.remove(node);
+        for (UUID userId : remoteUsers.keySet()) {
+            removeRemote(userId, node);
+        }
+    }
+
+    private void expireNodes() {
+        long cutoff = System.currentTimeMillis() - nodeTimeoutMillis;
+        nodeHeartbeats.forEach((node, lastSeen) -> {
+            if (lastSeen < cutoff) {
+                log.warn("Cluster node {} stopped sending heartbeats", node);
+                removeNode(node);
+            }
+        });
+    }
+
+    private void deliver(String payload) throws Exception {
+        if (payload.startsWith(OUTBOX_REFERENCE)) {
+            long id = Long.parseLong(payload.substring(OUTBOX_REFERENCE.length()));
+            Record outbox = DatabaseManager.dsl().fetchOne("delete from chat_outbox where id = ? returning payload", id);
+            if (outbox == null) {
+                log.warn("Cluster outbox entry {} not found", id);
+                return;
+            }
+            payload = outbox.get(0, String.class);
+        }
+
+        for (JsonNode entry : objectMapper.readTree(payload)) {
+            List<UUID> userIds = new ArrayList<>();
+            for (JsonNode userId : entry.path("users")) {
+                userIds.add(UUID.fromString(userId.asText()));
+            }
+            receiver.deliver(userIds, entry.path("command").asText(), entry.get("message"));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(5));
+            DatabaseManager.dsl().transaction(configuration -> {
+                DSLContext tx = DSL.using(configuration);
+                tx.execute("delete from chat_presence where node_id = ?", nodeId);
+                tx.execute("delete from chat_node where node_id = ?", nodeId);
+                notify(tx, PRESENCE_CHANNEL, objectMapper.createObjectNode().put("node", nodeId).put("left", true));
+            });
+            listener.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Failed to leave the cluster cleanly", e);
+        }
+        log.info("Cluster backplane stopped for node {}", nodeId);
+    }
+}
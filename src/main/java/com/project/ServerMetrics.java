@@ -0,0 +1,232 @@
+package com.project;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide counters for the WebSocket pipeline, rendered in Prometheus text format on GET /metrics.
+ * Everything on the hot path is a LongAdder; aggregation happens only when the endpoint is scraped.
+ */
+public class ServerMetrics {
+    public static final String PATH = "/metrics";
+    private static final String PREFIX = "simplechat_";
+    private static final Path PROC_STATUS = Path.of("/proc/self/status");
+
+    private static final LongAdder connectionsAccepted = new LongAdder();
+    private static final LongAdder handshakes = new LongAdder();
+    private static final LongAdder handshakeFailures = new LongAdder();
+    private static final LongAdder inboundFrames = new LongAdder();
+    private static final LongAdder inboundBytes = new LongAdder();
+    private static final LongAdder outboundFrames = new LongAdder();
+    private static final LongAdder outboundBytes = new LongAdder();
+    private static final LongAdder dispatchErrors = new LongAdder();
+    private static final Set<WebSocketSession> activeSessions = ConcurrentHashMap.newKeySet();
+    private static final Map<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+    private static final List<GaugeGroup> gaugeGroups = new CopyOnWriteArrayList<>();
+
+    private record GaugeGroup(String name, Supplier<Map<String, Number>> values) {
+    }
+
+    public static class CommandMetrics {
+        private final String labels;
+        private final LatencyHistogram dispatch = new LatencyHistogram();
+        private final LatencyHistogram handler = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        CommandMetrics(String route, String command) {
+            this.labels = "route=\"" + escape(route) + "\",command=\"" + escape(command) + "\",";
+        }
+
+        public void recordDispatch(long nanos) {
+            dispatch.record(nanos);
+        }
+
+        public void recordHandler(long nanos, boolean failed) {
+            handler.record(nanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+    }
+
+    public static CommandMetrics command(String route, String command) {
+        return commands.computeIfAbsent(route + ' ' + command, key -> new CommandMetrics(route, command));
+    }
+
+    public static void registerGauges(String name, Supplier<Map<String, Number>> values) {
+        gaugeGroups.add(new GaugeGroup(name, values));
+    }
+
+    public static void connectionAccepted() {
+        connectionsAccepted.increment();
+    }
+
+    public static void handshakeFailed() {
+        handshakeFailures.increment();
+    }
+
+    public static void sessionOpened(WebSocketSession session) {
+        handshakes.increment();
+        activeSessions.add(session);
+    }
+
+    public static void sessionClosed(WebSocketSession session) {
+        activeSessions.remove(session);
+    }
+
+    public static void frameReceived() {
+        inboundFrames.increment();
+    }
+
+    public static void bytesReceived(long length) {
+        inboundBytes.add(length);
+    }
+
+    public static void frameSent() {
+        outboundFrames.increment();
+    }
+
+    public static void bytesSent(long length) {
+        outboundBytes.add(length);
+    }
+
+    public static void dispatchFailed() {
+        dispatchErrors.increment();
+    }
+
+    public static byte[] httpResponse() {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] response = new byte[headBytes.length + body.length];
+        System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+        System.arraycopy(body, 0, response, headBytes.length, body.length);
+        return response;
+    }
+
+    public static String render() {
+        StringBuilder out = new StringBuilder(8192);
+
+        counter(out, "connections_accepted_total", connectionsAccepted.sum());
+        counter(out, "handshakes_total", handshakes.sum());
+        counter(out, "handshake_failures_total", handshakeFailures.sum());
+        gauge(out, "active_connections", activeSessions.size());
+        counter(out, "inbound_frames_total", inboundFrames.sum());
+        counter(out, "inbound_bytes_total", inboundBytes.sum());
+        counter(out, "outbound_frames_total", outboundFrames.sum());
+        counter(out, "outbound_bytes_total", outboundBytes.sum());
+        counter(out, "dispatch_errors_total", dispatchErrors.sum());
+        renderSessionQueues(out);
+        renderCommands(out);
+
+        for (GaugeGroup group : gaugeGroups) {
+            group.values().get().forEach((key, value) -> gauge(out, group.name() + "_" + snakeCase(key), value));
+        }
+        renderProcess(out);
+        return out.toString();
+    }
+
+    private static void renderSessionQueues(StringBuilder out) {
+        long queuedBytes = 0;
+        long maxQueuedBytes = 0;
+        long queuedMessages = 0;
+        long maxQueuedMessages = 0;
+        long droppedMessages = 0;
+        long activeTransfers = 0;
+        for (WebSocketSession session : activeSessions) {
+            long bytes = session.getQueuedBytes();
+            long messages = session.getQueuedMessages();
+            queuedBytes += bytes;
+            queuedMessages += messages;
+            maxQueuedBytes = Math.max(maxQueuedBytes, bytes);
+            maxQueuedMessages = Math.max(maxQueuedMessages, messages);
+            droppedMessages += session.getDroppedMessages();
+            activeTransfers += session.getTransferStats().size();
+        }
+
+        gauge(out, "session_queued_bytes", queuedBytes);
+        gauge(out, "session_queued_bytes_max", maxQueuedBytes);
+        gauge(out, "session_queued_messages", queuedMessages);
+        gauge(out, "session_queued_messages_max", maxQueuedMessages);
+        gauge(out, "session_dropped_messages", droppedMessages);
+        gauge(out, "session_file_transfers", activeTransfers);
+    }
+
+    private static void renderCommands(StringBuilder out) {
+        out.append("# TYPE ").append(PREFIX).append("command_dispatch_seconds histogram\n");
+        commands.values().forEach(metrics -> metrics.dispatch.writeTo(out, PREFIX + "command_dispatch_seconds", metrics.labels));
+        out.append("# TYPE ").append(PREFIX).append("command_handler_seconds histogram\n");
+        commands.values().forEach(metrics -> metrics.handler.writeTo(out, PREFIX + "command_handler_seconds", metrics.labels));
+        out.append("# TYPE ").append(PREFIX).append("command_errors_total counter\n");
+        commands.values().forEach(metrics -> out.append(PREFIX).append("command_errors_total{")
+                .append(metrics.labels, 0, metrics.labels.length() - 1).append("} ")
+                .append(metrics.errors.sum()).append('\n'));
+    }
+
+    private static void renderProcess(StringBuilder out) {
+        long rss = residentSetBytes();
+        if (rss >= 0) {
+            gauge(out, "process_resident_memory_bytes", rss);
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gauge(out, "jvm_heap_used_bytes", heap.getUsed());
+        gauge(out, "jvm_heap_committed_bytes", heap.getCommitted());
+        gauge(out, "jvm_threads", ManagementFactory.getThreadMXBean().getThreadCount());
+
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        out.append("# TYPE ").append(PREFIX).append("jvm_gc_collections_total counter\n");
+        for (GarbageCollectorMXBean gc : collectors) {
+            out.append(PREFIX).append("jvm_gc_collections_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+                    .append(gc.getCollectionCount()).append('\n');
+        }
+        out.append("# TYPE ").append(PREFIX).append("jvm_gc_collection_seconds_total counter\n");
+        for (GarbageCollectorMXBean gc : collectors) {
+            out.append(PREFIX).append("jvm_gc_collection_seconds_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+                    .append(gc.getCollectionTime() / 1000.0).append('\n');
+        }
+    }
+
+    private static long residentSetBytes() {
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (Exception ignored) {
+        }
+        return -1;
+    }
+
+    private static void counter(StringBuilder out, String name, long value) {
+        out.append("# TYPE ").append(PREFIX).append(name).append(" counter\n")
+                .append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, Number value) {
+        out.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n")
+                .append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String snakeCase(String name) {
+        return name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
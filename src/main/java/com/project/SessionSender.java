@@ -1,6 +1,9 @@
 package com.project;
 
+import java.nio.file.Path;
+
 public interface SessionSender {
     void send(String command, Object message);
     void sendFile(String command, byte[] fileData, Object metadata);
+    void sendFile(String command, Path file, Object metadata);
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.project;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SharedMessage {
+    private final String command;
+    private final Object message;
+    private final Map<CommandTable, WebSocketSession.MessageWrapper> binaryFrames = new ConcurrentHashMap<>(2);
+    private volatile WebSocketSession.MessageWrapper textFrame;
+
+    public SharedMessage(String command, Object message) {
+        this.command = command;
+        this.message = message;
+    }
+
+    public void enqueue(WebSocketSession session) {
+        CommandTable table = session.getCommandTable();
+        session.enqueue(table == null ? textFrame() : binaryFrame(table));
+    }
+
+    private WebSocketSession.MessageWrapper textFrame() {
+        WebSocketSession.MessageWrapper frame = textFrame;
+        if (frame == null) {
+            synchronized (this) {
+                frame = textFrame;
+                if (frame == null) {
+                    frame = WebSocketSession.MessageWrapper.shared(WebSocketSession.encodeText(command, message), false);
+                    textFrame = frame;
+                }
+            }
+        }
+        return frame;
+    }
+
+    private WebSocketSession.MessageWrapper binaryFrame(CommandTable table) {
+        return binaryFrames.computeIfAbsent(table, key -> WebSocketSession.MessageWrapper.shared(
+                WebSocketSession.encodeBinary(key, command, message), true));
+    }
+}
@@ -1,5 +1,7 @@
 package com.project;
 
+import java.nio.file.Path;
+
 public class SingleSessionWrapper implements SessionSender {
     private final WebSocketSession session;
 
@@ -20,4 +22,11 @@ public class SingleSessionWrapper implements SessionSender {
             session.sendFile(command, fileData, metadata);
         }
     }
+
+    @Override
+    public void sendFile(String command, Path file, Object metadata) {
+        if (session != null) {
+            session.sendFile(command, file, metadata);
+        }
+    }
 }
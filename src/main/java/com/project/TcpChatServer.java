@@ -1,126 +1,160 @@
 package com.project;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.*;
-import java.lang.reflect.Method;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.security.MessageDigest;
-import java.util.ArrayList;
-import java.util.Base64;
-import java.util.List;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class TcpChatServer {
-    private static final int PORT = 8080;
-    protected static final String WS_MAGIC_STRING = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static final String HTTP_UPGRADE_RESPONSE = """
-        HTTP/1.1 101 Switching Protocols\r
-        Upgrade: websocket\r
-        Connection: Upgrade\r
-        Sec-WebSocket-Accept: %s\r
-        \r
-        """;
+    private static final int PORT = EnvConfig.getInt("CHAT_PORT", 8080);
+    private static final String TRANSPORT_NIO = "nio";
 
     private static final WebSocketSessionManager sessionManager = new WebSocketSessionManager();
 
     public static void main(String[] args) {
-        try (ServerSocket serverSocket = new ServerSocket(PORT);
-             ExecutorService threadPool = Executors.newVirtualThreadPerTaskExecutor()) {
+        String transport = EnvConfig.getString("CHAT_TRANSPORT", "blocking");
+
+        try (ExecutorService threadPool = Executors.newVirtualThreadPerTaskExecutor()) {
+            DIContainer.registerSingleton(WebSocketSessionManager.class, sessionManager);
+            startBackplane();
+            DatabaseBulkhead bulkhead = new DatabaseBulkhead();
+            DIContainer.registerSingleton(DatabaseBulkhead.class, bulkhead);
+            ServerMetrics.registerGauges("db_bulkhead", bulkhead::stats);
+            startWriteBehind();
+            ServerMetrics.registerGauges("session_manager", () -> Map.of(
+                    "users", sessionManager.getUserCount(),
+                    "sessions", sessionManager.getSessionCount()));
+            for (String controllerPackage : EnvConfig.getString("CHAT_CONTROLLER_PACKAGES", "com.project.controller").split(",")) {
+                WebSocketAutoRegistrar.scanAndRegister(controllerPackage.trim());
+            }
+
+            if (TRANSPORT_NIO.equalsIgnoreCase(transport)) {
+                int eventLoops = EnvConfig.getInt("CHAT_EVENT_LOOPS", Runtime.getRuntime().availableProcessors());
+                new NioChatServer(PORT, eventLoops, threadPool, sessionManager).start();
+            } else {
+                serveBlocking(threadPool);
+            }
+        } catch (IOException e) {
+            log.error("Server error: ", e);
+        }
+    }
 
-            WebSocketAutoRegistrar.scanAndRegister("com.project.controller");
+    private static void startBackplane() {
+        String backplaneType = EnvConfig.getString("CLUSTER_BACKPLANE", "none");
+        ClusterBackplane backplane = switch (backplaneType.toLowerCase()) {
+            case "none" -> null;
+            case "postgres" -> new PostgresBackplane();
+            default -> throw new IllegalArgumentException("Unknown cluster backplane: " + backplaneType);
+        };
+
+        if (backplane != null) {
+            sessionManager.setBackplane(backplane);
+            Runtime.getRuntime().addShutdownHook(Thread.ofPlatform().unstarted(backplane::close));
+        }
+    }
+
+    private static void startWriteBehind() {
+        WriteBehindWriter writer = new WriteBehindWriter();
+        DIContainer.registerSingleton(WriteBehindWriter.class, writer);
+        ServerMetrics.registerGauges("write_behind", writer::stats);
+        Runtime.getRuntime().addShutdownHook(Thread.ofPlatform().unstarted(writer::close));
+    }
+
+    private static void serveBlocking(ExecutorService threadPool) throws IOException {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(PORT));
             log.info("Server started on port {}", PORT);
 
             while (!threadPool.isShutdown()) {
-                Socket clientSocket = serverSocket.accept();
-                threadPool.execute(new WebSocketHandler(clientSocket, threadPool, sessionManager));
+                SocketChannel clientChannel = serverChannel.accept();
+                ServerMetrics.connectionAccepted();
+                threadPool.execute(new WebSocketHandler(clientChannel, threadPool, sessionManager));
             }
-        } catch (IOException e) {
-            log.error("Server error: ", e);
         }
     }
 
     @Slf4j
     static class WebSocketHandler implements Runnable {
-        private final Socket clientSocket;
+        private static final long WRITE_LINGER_NANOS =
+                TimeUnit.MICROSECONDS.toNanos(EnvConfig.getLong("WS_WRITE_LINGER_MICROS", 0));
+
+        private final SocketChannel clientChannel;
         private final ExecutorService threadPool;
         private String route;
         private final String clientInfo;
         private final WebSocketSession session = new WebSocketSession();
         private final WebSocketSessionManager sessionManager;
+        private final WebSocketFrameDecoder decoder = new WebSocketFrameDecoder();
+        private final WebSocketFrameEncoder encoder = new WebSocketFrameEncoder();
+        private WebSocketMessageDispatcher dispatcher;
+        private boolean metricsRequest;
 
-        private static class FileUploadState {
-            String command;
-            WebSocketRouteRegistry.RouteHandler handler;
-            Object metadata;
-            long totalSize;
-            int totalChunks;
-            List<byte[]> receivedChunks = new ArrayList<>();
-            boolean expectingBinary = false;
-            String currentFileId;
-
-            void addChunk(byte[] chunk) {
-                receivedChunks.add(chunk);
-            }
-
-            boolean isComplete() {
-                return receivedChunks.size() == totalChunks;
-            }
-        }
-
-        private final Map<String, FileUploadState> fileUploads = new ConcurrentHashMap<>();
-
-        public WebSocketHandler(Socket socket, ExecutorService threadPool, WebSocketSessionManager sessionManager) {
-            this.clientSocket = socket;
+        public WebSocketHandler(SocketChannel channel, ExecutorService threadPool, WebSocketSessionManager sessionManager) {
+            this.clientChannel = channel;
             this.threadPool = threadPool;
-            this.clientInfo = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
+            this.clientInfo = describe(channel);
             this.sessionManager = sessionManager;
         }
 
+        private static String describe(SocketChannel channel) {
+            try {
+                InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+                return remote.getAddress().getHostAddress() + ":" + remote.getPort();
+            } catch (IOException e) {
+                return "unknown";
+            }
+        }
+
         @Override
         public void run() {
             log.info("[{}] New connection.", clientInfo);
 
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                 OutputStream out = clientSocket.getOutputStream()) {
+            try (clientChannel) {
+                clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
 
-                if (performHandshake(in, out)) {
+                if (performHandshake()) {
                     log.info("[{}] WebSocket handshake successful! Route: {}", clientInfo, route);
-                    handleClientConnection(out);
-                } else {
+                    handleClientConnection();
+                } else if (!metricsRequest) {
+                    ServerMetrics.handshakeFailed();
                     log.error("[{}] WebSocket handshake failed!", clientInfo);
                 }
             } catch (IOException e) {
                 log.error("[{}] WebSocket error: ", clientInfo, e);
             } finally {
+                if (dispatcher != null) {
+                    dispatcher.close();
+                }
+                ServerMetrics.sessionClosed(session);
                 sessionManager.unregisterSession(session);
             }
         }
 
-        private void handleClientConnection(OutputStream out) throws IOException {
+        private void handleClientConnection() {
             var inputHandler = threadPool.submit(() -> {
                 try {
                     sessionManager.setCurrentSession(session);
                     handleClientData();
-                    closeClientConnection();
                 } catch (IOException e) {
                     log.error("[{}] Input handler error: ", clientInfo, e);
+                } finally {
+                    decoder.release();
+                    closeClientConnection();
                 }
             });
 
             try {
                 sessionManager.setCurrentSession(session);
-                handleOutgoingMessages(out);
+                handleOutgoingMessages();
             } catch (IOException | InterruptedException e) {
                 log.error("[{}] Output handler error: ", clientInfo, e);
             } finally {
@@ -129,400 +163,102 @@ public class TcpChatServer {
         }
 
         private void handleClientData() throws IOException {
-            InputStream input = clientSocket.getInputStream();
-
             while (true) {
-                int firstByte = input.read();
-                if (firstByte == -1) break;
-
-                int opcode = firstByte & 0x0F;
-
-                if (opcode == 0x08) {
-                    break;
-                }
-
-                byte[] message = readWebSocketFrame(firstByte, input);
-                if (message == null) break;
-
-                try {
-                    if (opcode == 0x02) {
-                        handleBinaryFrame(message);
-                    } else if (opcode == 0x01) {
-                        handleTextFrame(message);
-                    } else {
-                        log.warn("[{}] Unsupported frame opcode: {}", clientInfo, opcode);
-                        session.send("error","{\"error\":\"Unsupported frame type\"}");
-                    }
-                } catch (Exception e) {
-                    log.error("[{}] Error processing message", clientInfo, e);
-                    session.send("error","{\"error\":\"Server error\"}");
+                if (!decoder.nextFrame()) {
+                    if (clientChannel.read(decoder.writableBuffer()) == -1) break;
+                    continue;
                 }
-            }
-        }
-
-        private void handleTextFrame(byte[] messageData) throws Exception {
-            String message = new String(messageData);
-            JsonNode jsonNode = objectMapper.readTree(message);
-
-            validateRequiredFields(jsonNode);
-
-            String command = jsonNode.get("command").asText();
-            MessageType type = MessageType.fromString(jsonNode.get("type").asText());
 
-            WebSocketRouteRegistry.RouteHandler handler = WebSocketRouteRegistry.getHandler(route, command);
+                int opcode = decoder.getOpcode();
 
-            if (handler == null) {
-                throw new IllegalArgumentException("No handler found for command: " + command);
-            }
-
-            switch (type) {
-                case META_DATA:
-                    validateMetaDataFields(jsonNode);
-                    handleMetaDataFrame(jsonNode, handler);
-                    break;
-
-                case PRE_CHUNK:
-                    validatePreChunkFields(jsonNode);
-                    handlePreChunkFrame(jsonNode, handler);
-                    break;
-
-                case TEXT:
-                    validateRegularMessageFields(jsonNode);
-                    processRegularMessage(jsonNode, handler);
+                if (opcode == 0x08) {
                     break;
-            }
-        }
-
-        private void validateRequiredFields(JsonNode jsonNode) {
-            if (!jsonNode.has("command")) {
-                throw new IllegalArgumentException("Message must contain 'command' field");
-            } else if (!jsonNode.has("type")) {
-                throw new IllegalArgumentException("Message must contain 'type' field");
-            }
-
-            try {
-                MessageType.fromString(jsonNode.get("type").asText());
-            } catch (IllegalArgumentException e) {
-                throw new IllegalArgumentException("Invalid message type");
-            }
-        }
-
-        private void validateMetaDataFields(JsonNode jsonNode) {
-            if (!jsonNode.has("id")) {
-                throw new IllegalArgumentException("Message must contain file id");
-            } else if (!jsonNode.has("fileSize")) {
-                throw new IllegalArgumentException("Message must contain size of file");
-            } else if (!jsonNode.has("totalChunks")) {
-                throw new IllegalArgumentException("Message must contain number of chunks");
-            }
-        }
-
-        private void validatePreChunkFields(JsonNode jsonNode) {
-            if (!jsonNode.has("id")) {
-                throw new IllegalArgumentException("Message must contain file id");
-            } else if (!jsonNode.has("chunkSize")) {
-                throw new IllegalArgumentException("Message must contain size of chunk");
-            } else if (!jsonNode.has("chunkNum")) {
-                throw new IllegalArgumentException("Message must contain chunk number");
-            }
-        }
-
-        private void validateRegularMessageFields(JsonNode jsonNode) {
-            if (!jsonNode.has("message")) {
-                throw new IllegalArgumentException("Message must contain 'message' field");
-            }
-        }
-
-        private void handleMetaDataFrame(JsonNode jsonNode, WebSocketRouteRegistry.RouteHandler handler) {
-            if (!handler.isBinary()) {
-                throw new IllegalArgumentException("Handler for command " + jsonNode.get("command").asText() + " is not binary");
-            }
-
-            String fileId = jsonNode.get("id").asText();
-            if (fileUploads.containsKey(fileId)) {
-                throw new IllegalStateException("File upload with id " + fileId + " already in progress");
-            }
-
-            FileUploadState uploadState = new FileUploadState();
-            uploadState.command = jsonNode.get("command").asText();
-            uploadState.handler = handler;
-            uploadState.totalSize = jsonNode.get("fileSize").asLong();
-            uploadState.totalChunks = jsonNode.get("totalChunks").asInt();
-
-            try {
-                if (jsonNode.has("message")) {
-                    JsonNode messageNode = jsonNode.get("message");
-                    uploadState.metadata = objectMapper.treeToValue(
-                            messageNode,
-                            handler.getMethod().getParameterTypes()[0]
-                    );
-                }
-            } catch (JsonProcessingException e) {
-                throw new IllegalArgumentException("Invalid metadata format in 'message' field", e);
-            }
-
-            fileUploads.put(fileId, uploadState);
-        }
-
-        private void handlePreChunkFrame(JsonNode jsonNode, WebSocketRouteRegistry.RouteHandler handler) {
-            if (!handler.isBinary()) {
-                throw new IllegalArgumentException("Handler for command " + jsonNode.get("command").asText() + " is not binary");
-            }
-
-            String fileId = jsonNode.get("id").asText();
-            FileUploadState uploadState = fileUploads.get(fileId);
-
-            if (uploadState == null) {
-                throw new IllegalStateException("No file upload with id " + fileId + " in progress");
-            }
-
-            int chunkNum = jsonNode.get("chunkNum").asInt();
-            long chunkSize = jsonNode.get("chunkSize").asLong();
-
-            if (chunkNum != uploadState.receivedChunks.size()) {
-                throw new IllegalStateException("Invalid chunk sequence for file " + fileId +
-                        ". Expected: " + uploadState.receivedChunks.size() +
-                        ", got: " + chunkNum);
-            }
-
-            uploadState.expectingBinary = true;
-            uploadState.currentFileId = fileId;
-        }
-
-        private void handleBinaryFrame(byte[] binaryData) {
-
-            FileUploadState uploadState = fileUploads.values().stream()
-                    .filter(state -> state.expectingBinary && state.currentFileId != null)
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalStateException("Unexpected binary data received"));
-
-            String fileId = uploadState.currentFileId;
-
-            uploadState.addChunk(binaryData);
-            uploadState.expectingBinary = false;
-            uploadState.currentFileId = null;
-
-            if (uploadState.isComplete()) {
-                completeFileUpload(fileId, uploadState);
-                fileUploads.remove(fileId);
-            }
-        }
-
-        private void completeFileUpload(String fileId, FileUploadState uploadState) {
-            byte[] fileData = new byte[(int) uploadState.totalSize];
-            int offset = 0;
-            for (byte[] chunk : uploadState.receivedChunks) {
-                System.arraycopy(chunk, 0, fileData, offset, chunk.length);
-                offset += chunk.length;
-            }
-
-            Object controller = WebSocketRouteRegistry.getControllerInstance(uploadState.handler.getMethod());
-            injectSession(controller);
-
-            threadPool.submit(() -> {
-                try {
-                    sessionManager.setCurrentSession(session);
-                    uploadState.handler.getMethod().invoke(controller, uploadState.metadata, fileData);
-                } catch (Exception e) {
-                    log.error("[{}] Controller handler error: ", clientInfo, e);
-                }
-            });
-
-            log.info("[{}] File {} uploaded successfully", clientInfo, fileId);
-        }
-
-        private void processRegularMessage(JsonNode jsonNode, WebSocketRouteRegistry.RouteHandler handler) throws Exception {
-            if (handler.isBinary()) {
-                throw new IllegalArgumentException("Handler for command " + jsonNode.get("command").asText() + " expects binary data");
-            }
-
-            Object controller = WebSocketRouteRegistry.getControllerInstance(handler.getMethod());
-            injectSession(controller);
-
-            Class<?> paramType = handler.getMethod().getParameterTypes()[0];
-            Object paramValue;
-
-            if (paramType == String.class) {
-                paramValue = jsonNode.toString();
-            } else {
-                JsonNode requestNode = jsonNode.get("message");
-                paramValue = objectMapper.treeToValue(requestNode, paramType);
-            }
-
-            threadPool.submit(() -> {
-                try {
-                    sessionManager.setCurrentSession(session);
-                    handler.getMethod().invoke(controller, paramValue);
-                } catch (Exception e) {
-                    log.error("[{}] Controller handler error: ", clientInfo, e);
                 }
-            });
-        }
 
-        private void injectSession(Object controller) {
-            try {
-                Method setSession = controller.getClass().getMethod("setSession", WebSocketSessionManager.class);
-                setSession.invoke(controller, sessionManager);
-            } catch (NoSuchMethodException e) {
-                log.debug("[{}] Controller doesn't require session", clientInfo);
-            } catch (Exception e) {
-                log.error("[{}] Error injecting session", clientInfo, e);
+                dispatcher.handleFrame(opcode, decoder.getPayloadArray(),
+                        decoder.getPayloadOffset(), decoder.getPayloadLength());
             }
         }
 
-        private boolean performHandshake(BufferedReader in, OutputStream out) throws IOException {
-            String line;
-            String webSocketKey = null;
-            String path = null;
+        private boolean performHandshake() throws IOException {
+            String requestHead;
 
-            while (!(line = in.readLine()).isEmpty()) {
-                if (line.startsWith("GET ")) {
-                    path = line.split(" ")[1];
-                } else if (line.startsWith("Sec-WebSocket-Key: ")) {
-                    webSocketKey = line.substring(19);
+            while ((requestHead = decoder.decodeRequestHead(WebSocketHandshake.MAX_REQUEST_SIZE)) == null) {
+                if (clientChannel.read(decoder.writableBuffer()) == -1) {
+                    return false;
                 }
             }
 
-            if (webSocketKey == null || path == null) {
+            WebSocketHandshake handshake = WebSocketHandshake.parse(requestHead);
+            if (handshake.isMetricsRequest()) {
+                metricsRequest = true;
+                encoder.add(ByteBuffer.wrap(ServerMetrics.httpResponse()));
+                encoder.writeTo(clientChannel);
                 return false;
             }
-
-            this.route = path;
-            String acceptKey = generateWebSocketAcceptKey(webSocketKey);
-            out.write(String.format(HTTP_UPGRADE_RESPONSE, acceptKey).getBytes());
-            out.flush();
-
-            return true;
-        }
-
-        private String generateWebSocketAcceptKey(String webSocketKey) {
-            try {
-                MessageDigest md = MessageDigest.getInstance("SHA-1");
-                md.update((webSocketKey + WS_MAGIC_STRING).getBytes());
-                return Base64.getEncoder().encodeToString(md.digest());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to generate WebSocket accept key", e);
-            }
-        }
-
-        private byte[] readWebSocketFrame(int firstByte, InputStream input) throws IOException {
-            int opcode = firstByte & 0x0F;
-
-            if (opcode == 0x08) {
-                return null;
-            }
-
-            int secondByte = input.read();
-            boolean masked = (secondByte & 0x80) != 0;
-            int payloadLength = secondByte & 0x7F;
-
-            if (payloadLength == 126) {
-                payloadLength = (input.read() & 0xFF) << 8 | (input.read() & 0xFF);
-            } else if (payloadLength == 127) {
-                long longLength = ((long) input.read() & 0xFF) << 56
-                        | ((long) input.read() & 0xFF) << 48
-                        | ((long) input.read() & 0xFF) << 40
-                        | ((long) input.read() & 0xFF) << 32
-                        | ((long) input.read() & 0xFF) << 24
-                        | ((long) input.read() & 0xFF) << 16
-                        | ((long) input.read() & 0xFF) << 8
-                        | ((long) input.read() & 0xFF);
-
-                if (longLength > Integer.MAX_VALUE) {
-                    throw new IOException("Payload too large");
-                }
-                payloadLength = (int) longLength;
+            if (!handshake.isValid()) {
+                return false;
             }
 
-            byte[] mask = new byte[4];
-            if (masked) {
-                input.readNBytes(mask, 0, 4);
+            this.route = handshake.getPath();
+            this.dispatcher = new WebSocketMessageDispatcher(route, session, sessionManager, threadPool, clientInfo);
+            String protocol = handshake.selectProtocol(BinaryProtocol.NAME);
+            PerMessageDeflate deflate = PerMessageDeflate.negotiate(handshake.getHeader("Sec-WebSocket-Extensions"));
+            encoder.add(ByteBuffer.wrap(handshake.response(protocol, deflate != null ? deflate.responseHeader() : null)));
+            if (deflate != null) {
+                decoder.setDeflate(deflate);
+                encoder.setDeflate(deflate);
             }
-
-            byte[] payload = new byte[payloadLength];
-            int totalRead = 0;
-            while (totalRead < payloadLength) {
-                int chunkSize = Math.min(8192, payloadLength - totalRead);
-                int read = input.read(payload, totalRead, chunkSize);
-                if (read == -1) {
-                    throw new IOException("Unexpected end of stream");
-                }
-                totalRead += read;
+            if (protocol != null) {
+                session.useBinaryProtocol(WebSocketRouteRegistry.getCommandTable(route));
             }
+            encoder.writeTo(clientChannel);
+            ServerMetrics.sessionOpened(session);
 
-            if (masked) {
-                for (int i = 0; i < payloadLength; i++) {
-                    payload[i] ^= mask[i % 4];
-                }
-            }
-
-            return payload;
+            return true;
         }
 
-        private void handleOutgoingMessages(OutputStream out) throws IOException, InterruptedException {
+        private void handleOutgoingMessages() throws IOException, InterruptedException {
             try {
-                while (!clientSocket.isClosed()) {
-                    var message = session.poll(100, TimeUnit.MILLISECONDS);
-                    if (message == null) {
-                        if (clientSocket.isInputShutdown() || Thread.currentThread().isInterrupted()) {
-                            break;
+                WebSocketSession.MessageWrapper message;
+                while ((message = session.take()) != null) {
+                    do {
+                        encoder.encode(message);
+                        if (!encoder.hasCapacity()) {
+                            encoder.writeTo(clientChannel);
                         }
-                        continue;
-                    }
-                    sendWebSocketFrame(out, message.data(), message.isBinary());
+                    } while ((message = nextQueuedMessage()) != null);
+
+                    encoder.writeTo(clientChannel);
                 }
             } catch (IOException e) {
-                if (!clientSocket.isClosed()) {
+                if (clientChannel.isOpen()) {
                     throw e;
                 }
+            } finally {
+                encoder.release();
             }
         }
 
-        private void sendWebSocketFrame(OutputStream out, byte[] data, boolean isBinary) throws IOException {
-            DataOutputStream dos = new DataOutputStream(out);
-            int opcode = isBinary ? 0x2 : 0x1;
-            dos.writeByte(0x80 | opcode); // FIN + opcode
-
-            int len = data.length;
-
-            if (len <= 125) {
-                dos.writeByte(len);
-            } else if (len <= 65535) {
-                dos.writeByte(126);
-                dos.writeShort(len);
-            } else {
-                dos.writeByte(127);
-                dos.writeLong(len);
+        private WebSocketSession.MessageWrapper nextQueuedMessage() throws InterruptedException {
+            WebSocketSession.MessageWrapper message = session.poll();
+            if (message == null && WRITE_LINGER_NANOS > 0 && !encoder.isEmpty()) {
+                message = session.poll(WRITE_LINGER_NANOS, TimeUnit.NANOSECONDS);
             }
-
-            dos.write(data);
-            dos.flush();
+            return message;
         }
 
-
         private void closeClientConnection() {
+            session.close();
             try {
-                if (!clientSocket.isClosed()) {
-                    if (!clientSocket.isOutputShutdown()) {
-                        sendCloseFrame(clientSocket.getOutputStream());
-                    }
-                    clientSocket.close();
+                if (clientChannel.isOpen()) {
+                    clientChannel.write(WebSocketFrameEncoder.closeFrame());
+                    clientChannel.close();
                 }
                 log.info("[{}] Connection closed gracefully.", clientInfo);
             } catch (IOException e) {
                 log.error("[{}] Error closing client socket: ", clientInfo, e);
             }
         }
-
-        private void sendCloseFrame(OutputStream out) throws IOException {
-            if (clientSocket.isClosed() || clientSocket.isOutputShutdown()) return;
-
-            byte[] payload = { (byte)(1000 >> 8), (byte)(1000 & 0xFF) };
-
-            out.write(0x88); // FIN + opcode 0x8
-            out.write(payload.length);
-            out.write(payload);
-            out.flush();
-        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,126 @@
+package com.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+public class TransferScheduler {
+    private static final int DEFAULT_MAX_ACTIVE = 4;
+    private static final long DEFAULT_SMALL_TRANSFER_BYTES = 1024 * 1024;
+    private static final int DEFAULT_SMALL_TRANSFER_WEIGHT = 4;
+
+    private final int maxActive;
+    private final long smallTransferBytes;
+    private final int smallTransferWeight;
+    private final List<FileTransfer> active = new ArrayList<>();
+    private final Deque<FileTransfer> waiting = new ArrayDeque<>();
+    private FileTransfer scheduled;
+    private int cursor;
+    private int credits;
+
+    public TransferScheduler() {
+        this(EnvConfig.getInt("WS_MAX_ACTIVE_TRANSFERS", DEFAULT_MAX_ACTIVE),
+                EnvConfig.getLong("WS_SMALL_TRANSFER_BYTES", DEFAULT_SMALL_TRANSFER_BYTES),
+                EnvConfig.getInt("WS_SMALL_TRANSFER_WEIGHT", DEFAULT_SMALL_TRANSFER_WEIGHT));
+    }
+
+    public TransferScheduler(int maxActive, long smallTransferBytes, int smallTransferWeight) {
+        if (maxActive < 1 || smallTransferWeight < 1) {
+            throw new IllegalArgumentException("Transfer scheduler limits must be positive");
+        }
+        this.maxActive = maxActive;
+        this.smallTransferBytes = smallTransferBytes;
+        this.smallTransferWeight = smallTransferWeight;
+    }
+
+    public synchronized void add(FileTransfer transfer) {
+        if (active.size() < maxActive) {
+            active.add(transfer);
+        } else {
+            waiting.add(transfer);
+        }
+    }
+
+    public synchronized FileTransfer next() {
+        if (active.isEmpty()) {
+            scheduled = null;
+            return null;
+        }
+        if (cursor >= active.size()) {
+            cursor = 0;
+        }
+
+        FileTransfer transfer = active.get(cursor);
+        if (credits <= 0) {
+            credits = weight(transfer);
+        }
+        if (--credits == 0) {
+            cursor++;
+        }
+        scheduled = transfer;
+        return transfer;
+    }
+
+    private int weight(FileTransfer transfer) {
+        return transfer.getFileSize() <= smallTransferBytes ? smallTransferWeight : 1;
+    }
+
+    public synchronized void remove(FileTransfer transfer) {
+        int index = active.indexOf(transfer);
+        if (index < 0) {
+            waiting.remove(transfer);
+            return;
+        }
+
+        active.remove(index);
+        if (index < cursor) {
+            cursor--;
+        } else if (index == cursor) {
+            credits = 0;
+        }
+        if (scheduled == transfer) {
+            scheduled = null;
+        }
+
+        FileTransfer promoted = waiting.poll();
+        if (promoted != null) {
+            active.add(promoted);
+        }
+    }
+
+    public synchronized FileTransfer pollNotStarted() {
+        for (FileTransfer transfer : active) {
+            if (transfer != scheduled && !transfer.isMetaDataSent()) {
+                remove(transfer);
+                return transfer;
+            }
+        }
+        return waiting.poll();
+    }
+
+    public synchronized boolean isEmpty() {
+        return active.isEmpty();
+    }
+
+    public synchronized int size() {
+        return active.size() + waiting.size();
+    }
+
+    public synchronized List<FileTransfer.TransferStats> stats() {
+        List<FileTransfer.TransferStats> stats = new ArrayList<>(active.size() + waiting.size());
+        active.forEach(transfer -> stats.add(transfer.stats()));
+        waiting.forEach(transfer -> stats.add(transfer.stats()));
+        return stats;
+    }
+
+    public synchronized void closeAll() {
+        active.forEach(FileTransfer::close);
+        active.clear();
+        waiting.forEach(FileTransfer::close);
+        waiting.clear();
+        scheduled = null;
+        cursor = 0;
+        credits = 0;
+    }
+}
@@ -0,0 +1,92 @@
+package com.project;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps uploads interrupted by a disconnect for UPLOAD_RESUME_TTL_SECONDS. Parked uploads are keyed by their
+ * owners, so only a session authenticated as the same users can resume one; anonymous uploads are not parked.
+ */
+@Slf4j
+public class UploadRegistry {
+    private static final long RESUME_TTL_SECONDS = EnvConfig.getLong("UPLOAD_RESUME_TTL_SECONDS", 300);
+    private static final Map<String, ParkedUpload> parkedUploads = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            task -> Thread.ofPlatform().name("upload-resume-sweeper").daemon(true).unstarted(task));
+    static {
+        if (RESUME_TTL_SECONDS > 0) {
+            long period = Math.max(1, RESUME_TTL_SECONDS / 2);
+            sweeper.scheduleAtFixedRate(UploadRegistry::sweep, period, period, TimeUnit.SECONDS);
+        }
+    }
+
+    private record ParkedUpload(FileUpload upload, long expiresAt) {
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+
+    public static void park(String route, FileUpload upload) {
+        if (RESUME_TTL_SECONDS <= 0 || upload.getOwners().isEmpty()) {
+            upload.discard();
+            return;
+        }
+
+        try {
+            upload.closeChannel();
+        } catch (IOException e) {
+            upload.discard();
+            return;
+        }
+
+        long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(RESUME_TTL_SECONDS);
+        ParkedUpload previous = parkedUploads.put(key(route, upload.getOwners(), upload.getFileId()),
+                new ParkedUpload(upload, expiresAt));
+        if (previous != null) {
+            previous.upload().discard();
+        }
+        log.debug("Parked upload {} at chunk {}", upload.getFileId(), upload.getReceivedChunks());
+    }
+
+    public static FileUpload claim(String route, Set<UUID> owners, String fileId) {
+        if (owners.isEmpty()) {
+            return null;
+        }
+        ParkedUpload parked = parkedUploads.remove(key(route, owners, fileId));
+        if (parked == null) {
+            return null;
+        }
+        if (parked.isExpired(System.nanoTime())) {
+            parked.upload().discard();
+            return null;
+        }
+        return parked.upload();
+    }
+
+    private static void sweep() {
+        long now = System.nanoTime();
+        parkedUploads.entrySet().removeIf(entry -> {
+            if (entry.getValue().isExpired(now)) {
+                entry.getValue().upload().discard();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static String key(String route, Set<UUID> owners, String fileId) {
+        String ownerKey = owners.size() == 1
+                ? owners.iterator().next().toString()
+                : owners.stream().map(UUID::toString).sorted().collect(Collectors.joining(","));
+        return route + '\n' + ownerKey + '\n' + fileId;
+    }
+}
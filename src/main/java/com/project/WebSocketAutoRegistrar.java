@@ -8,12 +8,39 @@ import org.reflections.scanners.Scanners;
 import org.reflections.util.ConfigurationBuilder;
 
 import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ServiceLoader;
 import java.util.Set;
 
+/**
+ * Registers controllers through the generated route modules. The Reflections classpath scan only runs for
+ * packages without a module, or with CHAT_ROUTE_SCAN=true to also pick up controllers the modules do not
+ * cover, such as classes compiled without the route processor.
+ */
 @Slf4j
 public class WebSocketAutoRegistrar {
+    private static final boolean SCAN_UNCOVERED = EnvConfig.getBoolean("CHAT_ROUTE_SCAN", false);
 
     public static void scanAndRegister(String basePackage) {
+        List<WebSocketRouteModule> modules = ServiceLoader.load(WebSocketRouteModule.class).stream()
+                .map(ServiceLoader.Provider::get)
+                .filter(module -> isWithin(module.getPackageName(), basePackage))
+                .toList();
+        Set<Class<?>> generated = new HashSet<>();
+        for (WebSocketRouteModule module : modules) {
+            module.register();
+            generated.addAll(module.getControllerClasses());
+        }
+        if (!modules.isEmpty()) {
+            log.info("Registered {} generated route module(s) for {}", modules.size(), basePackage);
+            if (!SCAN_UNCOVERED) {
+                return;
+            }
+        } else {
+            log.info("No generated route modules for {}, scanning the classpath", basePackage);
+        }
+
         Reflections reflections = new Reflections(
                 new ConfigurationBuilder()
                         .forPackages(basePackage)
@@ -23,6 +50,13 @@ public class WebSocketAutoRegistrar {
         Set<Class<?>> controllerClasses = reflections.getTypesAnnotatedWith(WebSocketRoute.class);
 
         for (Class<?> controllerClass : controllerClasses) {
+            if (generated.contains(controllerClass)) {
+                continue;
+            }
+            if (!modules.isEmpty()) {
+                log.info("Controller {} has no generated route module, registering it by reflection",
+                        controllerClass.getName());
+            }
             try {
                 Object controllerInstance = DIContainer.createOrGetInstance(controllerClass);
                 WebSocketRouteRegistry.registerController(controllerInstance);
@@ -39,6 +73,10 @@ public class WebSocketAutoRegistrar {
             }
         }
     }
+
+    private static boolean isWithin(String packageName, String basePackage) {
+        return packageName.equals(basePackage) || packageName.startsWith(basePackage + ".");
+    }
 }
 
 
@@ -0,0 +1,207 @@
+package com.project;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+public class WebSocketFrameDecoder {
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 4 * 1024;
+    private static final int DEFAULT_MAX_RETAINED_CAPACITY = 128 * 1024;
+    private static final int DEFAULT_MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+    private static final int MIN_READ_SPACE = 1024;
+
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+    private final long maxPayloadLength;
+
+    private ByteBuffer buffer;
+    private int readIndex;
+    private PerMessageDeflate deflate;
+
+    private int opcode;
+    private boolean fin;
+    private byte[] payloadArray;
+    private int payloadOffset;
+    private int payloadLength;
+
+    public WebSocketFrameDecoder() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_RETAINED_CAPACITY,
+                EnvConfig.getLong("WS_MAX_FRAME_SIZE", DEFAULT_MAX_PAYLOAD_LENGTH));
+    }
+
+    public WebSocketFrameDecoder(int initialCapacity, int maxRetainedCapacity, long maxPayloadLength) {
+        this.initialCapacity = initialCapacity;
+        this.maxRetainedCapacity = Math.max(initialCapacity, maxRetainedCapacity);
+        this.maxPayloadLength = Math.min(maxPayloadLength, Integer.MAX_VALUE - 14);
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    public void setDeflate(PerMessageDeflate deflate) {
+        this.deflate = deflate;
+    }
+
+    public ByteBuffer writableBuffer() {
+        if (readIndex == buffer.position()) {
+            if (buffer.capacity() > maxRetainedCapacity) {
+                buffer = ByteBuffer.allocate(initialCapacity);
+            } else {
+                buffer.clear();
+            }
+            readIndex = 0;
+        } else if (buffer.remaining() < MIN_READ_SPACE && readIndex > 0) {
+            compact();
+        }
+
+        if (!buffer.hasRemaining()) {
+            resize(buffer.capacity() * 2);
+        }
+        return buffer;
+    }
+
+    public String decodeRequestHead(int maxHeadSize) throws IOException {
+        byte[] data = buffer.array();
+        int end = buffer.position();
+
+        for (int i = readIndex; i + 3 < end; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n') {
+                String head = new String(data, readIndex, i - readIndex, StandardCharsets.ISO_8859_1);
+                readIndex = i + 4;
+                return head;
+            }
+        }
+
+        if (end - readIndex >= maxHeadSize) {
+            throw new IOException("Handshake request too large");
+        }
+        return null;
+    }
+
+    public boolean nextFrame() throws IOException {
+        byte[] data = buffer.array();
+        int available = buffer.position() - readIndex;
+        if (available < 2) {
+            return false;
+        }
+
+        int firstByte = data[readIndex] & 0xFF;
+        int secondByte = data[readIndex + 1] & 0xFF;
+        boolean masked = (secondByte & 0x80) != 0;
+        int lengthField = secondByte & 0x7F;
+
+        int headerLength = 2 + (lengthField == 126 ? 2 : lengthField == 127 ? 8 : 0) + (masked ? 4 : 0);
+        if (available < headerLength) {
+            return false;
+        }
+
+        long length = lengthField;
+        if (lengthField == 126) {
+            length = (data[readIndex + 2] & 0xFF) << 8 | (data[readIndex + 3] & 0xFF);
+        } else if (lengthField == 127) {
+            length = (long) LONG_BE.get(data, readIndex + 2);
+        }
+
+        if (length < 0 || length > maxPayloadLength) {
+            throw new IOException("Payload too large");
+        }
+
+        int frameLength = headerLength + (int) length;
+        if (available < frameLength) {
+            ensureCapacity(frameLength);
+            return false;
+        }
+
+        opcode = firstByte & 0x0F;
+        fin = (firstByte & 0x80) != 0;
+        payloadArray = data;
+        payloadOffset = readIndex + headerLength;
+        payloadLength = (int) length;
+
+        if (masked) {
+            unmask(data, payloadOffset, payloadLength, (int) INT_LE.get(data, payloadOffset - 4));
+        }
+
+        readIndex += frameLength;
+        ServerMetrics.bytesReceived(frameLength);
+
+        if ((firstByte & 0x40) != 0) {
+            if (deflate == null || opcode >= 0x08) {
+                throw new IOException("Unexpected compressed frame");
+            }
+            payloadLength = deflate.decompress(data, payloadOffset, payloadLength, (int) maxPayloadLength);
+            payloadArray = deflate.getInflated();
+            payloadOffset = 0;
+        }
+        return true;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public boolean isFinal() {
+        return fin;
+    }
+
+    public byte[] getPayloadArray() {
+        return payloadArray;
+    }
+
+    public int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    public void release() {
+        if (deflate != null) {
+            deflate.releaseInflater();
+        }
+    }
+
+    public static void unmask(byte[] data, int offset, int length, int mask) {
+        long wideMask = (mask & 0xFFFFFFFFL) | ((long) mask << 32);
+
+        int i = 0;
+        for (int wideEnd = length - 7; i < wideEnd; i += 8) {
+            LONG_LE.set(data, offset + i, (long) LONG_LE.get(data, offset + i) ^ wideMask);
+        }
+        for (; i < length; i++) {
+            data[offset + i] ^= (byte) (mask >>> ((i & 3) << 3));
+        }
+    }
+
+    private void ensureCapacity(int frameLength) {
+        if (buffer.capacity() - readIndex >= frameLength) {
+            return;
+        }
+        if (buffer.capacity() >= frameLength) {
+            compact();
+        } else {
+            resize(Math.max(frameLength, buffer.capacity() * 2));
+        }
+    }
+
+    private void compact() {
+        byte[] data = buffer.array();
+        int pending = buffer.position() - readIndex;
+        System.arraycopy(data, readIndex, data, 0, pending);
+        buffer.position(pending);
+        readIndex = 0;
+    }
+
+    private void resize(int capacity) {
+        ByteBuffer resized = ByteBuffer.allocate(capacity);
+        resized.put(buffer.array(), readIndex, buffer.position() - readIndex);
+        buffer = resized;
+        readIndex = 0;
+    }
+}
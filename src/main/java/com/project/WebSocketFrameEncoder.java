@@ -0,0 +1,211 @@
+package com.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+public class WebSocketFrameEncoder {
+    private static final int MAX_HEADER_LENGTH = 10;
+    private static final int MAX_BATCH_FRAMES = 64;
+    private static final int DEFAULT_MAX_BATCH_BYTES = 256 * 1024;
+    private static final int COMPRESSED_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] CLOSE_FRAME = {(byte) 0x88, 2, (byte) (1000 >> 8), (byte) (1000 & 0xFF)};
+
+    private final long maxBatchBytes;
+    private final ByteBuffer headers = ByteBuffer.allocate(MAX_BATCH_FRAMES * MAX_HEADER_LENGTH);
+    private final ByteBuffer[] pending = new ByteBuffer[MAX_BATCH_FRAMES * 3];
+    private int headerPosition;
+    private int pendingCount;
+    private int writeIndex;
+    private long pendingBytes;
+    private FileTransfer.FileRegion pendingRegion;
+    private long regionWritten;
+    private PerMessageDeflate deflate;
+    private ByteBuffer compressed;
+
+    public WebSocketFrameEncoder() {
+        this(EnvConfig.getLong("WS_WRITE_BATCH_BYTES", DEFAULT_MAX_BATCH_BYTES));
+    }
+
+    public WebSocketFrameEncoder(long maxBatchBytes) {
+        this.maxBatchBytes = Math.max(1, maxBatchBytes);
+    }
+
+    public void setDeflate(PerMessageDeflate deflate) {
+        this.deflate = deflate;
+    }
+
+    public static ByteBuffer closeFrame() {
+        return ByteBuffer.wrap(CLOSE_FRAME.clone());
+    }
+
+    public static ByteBuffer frame(byte[] data, boolean isBinary) {
+        int len = data.length;
+        ByteBuffer frame = ByteBuffer.allocate(headerLength(len) + len);
+        frame.put((byte) (0x80 | (isBinary ? 0x2 : 0x1)));
+        if (len <= 125) {
+            frame.put((byte) len);
+        } else if (len <= 65535) {
+            frame.put((byte) 126);
+            frame.putShort((short) len);
+        } else {
+            frame.put((byte) 127);
+            frame.putLong(len);
+        }
+        return frame.put(data).flip();
+    }
+
+    private static int headerLength(long len) {
+        return len <= 125 ? 2 : len <= 65535 ? 4 : MAX_HEADER_LENGTH;
+    }
+
+    public boolean hasCapacity() {
+        return pendingRegion == null && pendingCount + 3 <= pending.length && pendingBytes < maxBatchBytes;
+    }
+
+    public boolean isEmpty() {
+        return writeIndex == pendingCount && pendingRegion == null;
+    }
+
+    public void encode(WebSocketSession.MessageWrapper message) throws IOException {
+        ServerMetrics.frameSent();
+        if (deflate != null && message.region() == null && deflate.shouldCompress(message.length())) {
+            encodeCompressed(message);
+            return;
+        }
+
+        if (message.frame() != null) {
+            add(message.frame().duplicate());
+            return;
+        }
+
+        writeHeader(message.isBinary() ? 0x2 : 0x1, message.length(), false);
+        if (message.header() != null) {
+            ByteBuffer header = message.header().duplicate();
+            pending[pendingCount++] = header;
+            pendingBytes += header.remaining();
+        }
+
+        if (message.region() != null) {
+            pendingRegion = message.region();
+            regionWritten = 0;
+            pendingBytes += pendingRegion.length();
+        } else {
+            ByteBuffer payload = message.payload().duplicate();
+            pending[pendingCount++] = payload;
+            pendingBytes += payload.remaining();
+        }
+    }
+
+    private void encodeCompressed(WebSocketSession.MessageWrapper message) throws IOException {
+        int bound = PerMessageDeflate.maxCompressedLength((int) message.length());
+        if (compressed == null || compressed.remaining() < bound) {
+            compressed = ByteBuffer.allocate(Math.max(bound, COMPRESSED_BUFFER_SIZE));
+        }
+
+        int start = compressed.position();
+        int length = deflate.compress(message.header(), message.payload(), compressed);
+
+        writeHeader(message.isBinary() ? 0x2 : 0x1, length, true);
+        pending[pendingCount++] = compressed.slice(start, length);
+        pendingBytes += length;
+    }
+
+    private void writeHeader(int opcode, long len, boolean compressed) {
+        int start = headerPosition;
+
+        headers.put(headerPosition++, (byte) (0x80 | (compressed ? 0x40 : 0) | opcode)); // FIN + RSV1 + opcode
+        if (len <= 125) {
+            headers.put(headerPosition++, (byte) len);
+        } else if (len <= 65535) {
+            headers.put(headerPosition++, (byte) 126);
+            headers.putShort(headerPosition, (short) len);
+            headerPosition += 2;
+        } else {
+            headers.put(headerPosition++, (byte) 127);
+            headers.putLong(headerPosition, len);
+            headerPosition += 8;
+        }
+
+        pending[pendingCount++] = headers.slice(start, headerPosition - start);
+        pendingBytes += headerPosition - start;
+    }
+
+    public void add(ByteBuffer raw) {
+        if (pendingCount == pending.length) {
+            throw new IllegalStateException("Frame batch is full");
+        }
+        pending[pendingCount++] = raw;
+        pendingBytes += raw.remaining();
+    }
+
+    public boolean writeTo(GatheringByteChannel channel) throws IOException {
+        while (writeIndex < pendingCount) {
+            long written = channel.write(pending, writeIndex, pendingCount - writeIndex);
+            ServerMetrics.bytesSent(written);
+            while (writeIndex < pendingCount && !pending[writeIndex].hasRemaining()) {
+                writeIndex++;
+            }
+            if (written == 0 && writeIndex < pendingCount) {
+                return false;
+            }
+        }
+
+        if (pendingRegion != null && !writeRegion(channel)) {
+            return false;
+        }
+
+        reset();
+        return true;
+    }
+
+    private boolean writeRegion(WritableByteChannel channel) throws IOException {
+        FileChannel file = pendingRegion.channel();
+        while (regionWritten < pendingRegion.length()) {
+            long position = pendingRegion.position() + regionWritten;
+            long written = file.transferTo(position, pendingRegion.length() - regionWritten, channel);
+            ServerMetrics.bytesSent(written);
+            if (written == 0) {
+                if (position >= file.size()) {
+                    throw new IOException("File truncated while sending");
+                }
+                return false;
+            }
+            regionWritten += written;
+        }
+
+        pendingRegion.release();
+        pendingRegion = null;
+        return true;
+    }
+
+    public void release() {
+        if (pendingRegion != null) {
+            pendingRegion.release();
+        }
+        if (deflate != null) {
+            deflate.releaseDeflater();
+        }
+        reset();
+    }
+
+    private void reset() {
+        pendingRegion = null;
+        for (int i = 0; i < pendingCount; i++) {
+            pending[i] = null;
+        }
+        headerPosition = 0;
+        pendingCount = 0;
+        writeIndex = 0;
+        pendingBytes = 0;
+        if (compressed != null) {
+            if (compressed.capacity() > COMPRESSED_BUFFER_SIZE) {
+                compressed = null;
+            } else {
+                compressed.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.project;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class WebSocketHandshake {
+    public static final int MAX_REQUEST_SIZE = 16 * 1024;
+    private static final String WS_MAGIC_STRING = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final String HTTP_UPGRADE_RESPONSE = """
+        HTTP/1.1 101 Switching Protocols\r
+        Upgrade: websocket\r
+        Connection: Upgrade\r
+        Sec-WebSocket-Accept: %s\r
+        %s\r
+        """;
+
+    private final String path;
+    private final Map<String, String> headers;
+
+    private WebSocketHandshake(String path, Map<String, String> headers) {
+        this.path = path;
+        this.headers = headers;
+    }
+
+    public static WebSocketHandshake parse(List<String> requestLines) {
+        String path = null;
+        Map<String, String> headers = new HashMap<>();
+
+        for (String line : requestLines) {
+            if (line.startsWith("GET ")) {
+                String[] parts = line.split(" ");
+                if (parts.length > 1) {
+                    path = parts[1];
+                }
+            } else {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                            line.substring(colon + 1).trim());
+                }
+            }
+        }
+
+        return new WebSocketHandshake(path, headers);
+    }
+
+    public static WebSocketHandshake parse(String requestHead) {
+        return parse(List.of(requestHead.split("\r\n")));
+    }
+
+    public boolean isValid() {
+        return path != null && getWebSocketKey() != null;
+    }
+
+    public boolean isMetricsRequest() {
+        return path != null && getWebSocketKey() == null
+                && (path.equals(ServerMetrics.PATH) || path.startsWith(ServerMetrics.PATH + "?"));
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public String getWebSocketKey() {
+        return getHeader("Sec-WebSocket-Key");
+    }
+
+    public String selectProtocol(String supported) {
+        String requested = getHeader("Sec-WebSocket-Protocol");
+        if (requested == null) {
+            return null;
+        }
+        for (String protocol : requested.split(",")) {
+            if (protocol.trim().equals(supported)) {
+                return supported;
+            }
+        }
+        return null;
+    }
+
+    public byte[] response() {
+        return response(null, null);
+    }
+
+    public byte[] response(String protocol, String extensions) {
+        String extraHeaders = (protocol != null ? "Sec-WebSocket-Protocol: " + protocol + "\r\n" : "")
+                + (extensions != null ? "Sec-WebSocket-Extensions: " + extensions + "\r\n" : "");
+        return String.format(HTTP_UPGRADE_RESPONSE, generateAcceptKey(getWebSocketKey()), extraHeaders)
+                .getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String generateAcceptKey(String webSocketKey) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update((webSocketKey + WS_MAGIC_STRING).getBytes());
+            return Base64.getEncoder().encodeToString(md.digest());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to generate WebSocket accept key", e);
+        }
+    }
+}
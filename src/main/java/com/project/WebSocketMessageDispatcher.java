@@ -0,0 +1,567 @@
+package com.project;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+public class WebSocketMessageDispatcher {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ClassValue<ObjectReader> readers = new ClassValue<>() {
+        @Override
+        protected ObjectReader computeValue(Class<?> type) {
+            return objectMapper.readerFor(type);
+        }
+    };
+    private static final long MAX_PENDING_UPLOAD_BYTES = EnvConfig.getLong("UPLOAD_MAX_PENDING_BYTES", 4 * 1024 * 1024);
+
+    private final String route;
+    private final WebSocketSession session;
+    private final WebSocketSessionManager sessionManager;
+    private final ExecutorService threadPool;
+    private final String clientInfo;
+    private final Executor uploadExecutor;
+
+    private final Map<String, FileUpload> fileUploads = new ConcurrentHashMap<>();
+    private final AtomicLong pendingUploadBytes = new AtomicLong();
+    private volatile Runnable uploadDrainedListener;
+    private FileUpload expectedUpload;
+    private long frameReceivedNanos;
+
+    public WebSocketMessageDispatcher(String route, WebSocketSession session, WebSocketSessionManager sessionManager,
+                                      ExecutorService threadPool, String clientInfo) {
+        this(route, session, sessionManager, threadPool, clientInfo, null);
+    }
+
+    /**
+     * @param uploadExecutor runs upload file I/O in order, off the reading thread; null runs it inline, which
+     *                       is only acceptable when the reading thread may block
+     */
+    public WebSocketMessageDispatcher(String route, WebSocketSession session, WebSocketSessionManager sessionManager,
+                                      ExecutorService threadPool, String clientInfo, Executor uploadExecutor) {
+        this.route = route;
+        this.session = session;
+        this.sessionManager = sessionManager;
+        this.threadPool = threadPool;
+        this.clientInfo = clientInfo;
+        this.uploadExecutor = uploadExecutor;
+    }
+
+    /**
+     * True while more upload bytes are waiting for the disk than UPLOAD_MAX_PENDING_BYTES; the transport should
+     * stop reading until the listener set with {@link #setUploadDrainedListener} runs.
+     */
+    public boolean isUploadBacklogged() {
+        return pendingUploadBytes.get() >= MAX_PENDING_UPLOAD_BYTES;
+    }
+
+    public void setUploadDrainedListener(Runnable uploadDrainedListener) {
+        this.uploadDrainedListener = uploadDrainedListener;
+    }
+
+    public void handleFrame(int opcode, byte[] data, int offset, int length) {
+        frameReceivedNanos = System.nanoTime();
+        ServerMetrics.frameReceived();
+        try {
+            if (opcode == 0x02) {
+                CommandTable commandTable = session.getCommandTable();
+                if (commandTable != null) {
+                    handleProtocolFrame(commandTable, data, offset, length);
+                } else {
+                    handleBinaryFrame(data, offset, length);
+                }
+            } else if (opcode == 0x01) {
+                handleTextFrame(data, offset, length);
+            } else {
+                log.warn("[{}] Unsupported frame opcode: {}", clientInfo, opcode);
+                session.send("error","{\"error\":\"Unsupported frame type\"}");
+            }
+        } catch (Exception e) {
+            ServerMetrics.dispatchFailed();
+            log.error("[{}] Error processing message", clientInfo, e);
+            session.send("error","{\"error\":\"Server error\"}");
+        }
+    }
+
+    private void handleTextFrame(byte[] data, int offset, int length) throws Exception {
+        InboundMessage message = parseMessage(data, offset, length);
+
+        validateRequiredFields(message);
+
+        WebSocketRouteRegistry.RouteHandler handler = message.handler;
+        if (handler == null) {
+            throw new IllegalArgumentException("No handler found for command: " + message.command);
+        }
+
+        switch (message.type) {
+            case META_DATA:
+                validateMetaDataFields(message);
+                handleMetaDataFrame(message, handler);
+                break;
+
+            case PRE_CHUNK:
+                validatePreChunkFields(message);
+                handlePreChunkFrame(message, handler);
+                break;
+
+            case TEXT:
+                validateRegularMessageFields(message);
+                processRegularMessage(message, data, offset, length, handler);
+                break;
+        }
+    }
+
+    private static class InboundMessage {
+        String command;
+        String typeName;
+        MessageType type;
+        WebSocketRouteRegistry.RouteHandler handler;
+        String id;
+        Long fileSize;
+        Integer totalChunks;
+        Long chunkSize;
+        Integer chunkNum;
+        boolean resume;
+        boolean hasMessage;
+        boolean messageBound;
+        Object message;
+        TokenBuffer bufferedMessage;
+    }
+
+    private InboundMessage parseMessage(byte[] data, int offset, int length) throws IOException {
+        InboundMessage message = new InboundMessage();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Message must be a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+
+                switch (field) {
+                    case "command" -> {
+                        message.command = parser.getValueAsString();
+                        message.handler = message.command != null
+                                ? WebSocketRouteRegistry.getHandler(route, message.command)
+                                : null;
+                    }
+                    case "type" -> {
+                        message.typeName = parser.getValueAsString();
+                        message.type = parseType(message.typeName);
+                    }
+                    case "id" -> message.id = parser.getValueAsString();
+                    case "fileSize" -> message.fileSize = parser.getValueAsLong();
+                    case "totalChunks" -> message.totalChunks = parser.getValueAsInt();
+                    case "chunkSize" -> message.chunkSize = parser.getValueAsLong();
+                    case "chunkNum" -> message.chunkNum = parser.getValueAsInt();
+                    case "resume" -> message.resume = parser.getValueAsBoolean();
+                    case "message" -> readMessageField(parser, message);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return message;
+    }
+
+    private static MessageType parseType(String value) {
+        try {
+            return MessageType.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void readMessageField(JsonParser parser, InboundMessage message) throws IOException {
+        message.hasMessage = true;
+
+        if (message.handler == null || message.type == null) {
+            TokenBuffer buffer = new TokenBuffer(parser);
+            buffer.copyCurrentStructure(parser);
+            message.bufferedMessage = buffer;
+            return;
+        }
+
+        Class<?> targetType = messageTargetType(message);
+        if (targetType == null) {
+            parser.skipChildren();
+            return;
+        }
+        message.message = bindMessage(message, parser, targetType);
+        message.messageBound = true;
+    }
+
+    private static Class<?> messageTargetType(InboundMessage message) {
+        Class<?> paramType = message.handler.getParameterType();
+        return switch (message.type) {
+            case META_DATA -> paramType;
+            case TEXT -> paramType == String.class ? null : paramType;
+            case PRE_CHUNK -> null;
+        };
+    }
+
+    private Object messageValue(InboundMessage message, Class<?> targetType) throws IOException {
+        if (message.messageBound) {
+            return message.message;
+        }
+        if (message.bufferedMessage == null) {
+            return null;
+        }
+        try (JsonParser parser = message.bufferedMessage.asParser(objectMapper)) {
+            parser.nextToken();
+            return bindMessage(message, parser, targetType);
+        }
+    }
+
+    private static Object bindMessage(InboundMessage message, JsonParser parser, Class<?> targetType) throws IOException {
+        try {
+            return readers.get(targetType).readValue(parser);
+        } catch (JsonProcessingException e) {
+            if (message.type == MessageType.META_DATA) {
+                throw new IllegalArgumentException("Invalid metadata format in 'message' field", e);
+            }
+            throw e;
+        }
+    }
+
+    private void validateRequiredFields(InboundMessage message) {
+        if (message.command == null) {
+            throw new IllegalArgumentException("Message must contain 'command' field");
+        } else if (message.typeName == null) {
+            throw new IllegalArgumentException("Message must contain 'type' field");
+        } else if (message.type == null) {
+            throw new IllegalArgumentException("Invalid message type");
+        }
+    }
+
+    private void validateMetaDataFields(InboundMessage message) {
+        if (message.id == null) {
+            throw new IllegalArgumentException("Message must contain file id");
+        } else if (message.fileSize == null) {
+            throw new IllegalArgumentException("Message must contain size of file");
+        } else if (message.totalChunks == null) {
+            throw new IllegalArgumentException("Message must contain number of chunks");
+        }
+    }
+
+    private void validatePreChunkFields(InboundMessage message) {
+        if (message.id == null) {
+            throw new IllegalArgumentException("Message must contain file id");
+        } else if (message.chunkSize == null) {
+            throw new IllegalArgumentException("Message must contain size of chunk");
+        } else if (message.chunkNum == null) {
+            throw new IllegalArgumentException("Message must contain chunk number");
+        }
+    }
+
+    private void validateRegularMessageFields(InboundMessage message) {
+        if (!message.hasMessage) {
+            throw new IllegalArgumentException("Message must contain 'message' field");
+        }
+    }
+
+    private void handleMetaDataFrame(InboundMessage message, WebSocketRouteRegistry.RouteHandler handler) throws IOException {
+        if (!handler.isBinary()) {
+            throw new IllegalArgumentException("Handler for command " + message.command + " is not binary");
+        }
+
+        startFileUpload(message.id, message.command, handler, message.fileSize, message.totalChunks,
+                messageValue(message, handler.getParameterType()), message.resume);
+    }
+
+    private void startFileUpload(String fileId, String command, WebSocketRouteRegistry.RouteHandler handler,
+                                 long totalSize, int totalChunks, Object metadata, boolean resume) {
+        if (fileUploads.containsKey(fileId)) {
+            throw new IllegalStateException("File upload with id " + fileId + " already in progress");
+        }
+
+        Set<UUID> owners = sessionManager.getUserIds(session);
+        FileUpload parked = UploadRegistry.claim(route, owners, fileId);
+        boolean resumed = parked != null && resume && parked.matches(command, totalSize, totalChunks);
+        FileUpload upload = resumed
+                ? parked
+                : new FileUpload(fileId, command, handler, totalSize, totalChunks, metadata, owners);
+        fileUploads.put(fileId, upload);
+
+        runUploadIo(() -> {
+            if (parked != null && !resumed) {
+                parked.discard();
+            }
+            try {
+                if (resumed) {
+                    upload.reopen();
+                } else {
+                    upload.open();
+                }
+            } catch (IOException e) {
+                failUpload(upload, new IllegalStateException("Failed to create upload file for " + fileId, e));
+                return;
+            }
+            if (resume) {
+                session.send("uploadStatus", upload.status());
+            }
+        });
+    }
+
+    private void handlePreChunkFrame(InboundMessage message, WebSocketRouteRegistry.RouteHandler handler) {
+        if (!handler.isBinary()) {
+            throw new IllegalArgumentException("Handler for command " + message.command + " is not binary");
+        }
+
+        if (expectedUpload != null) {
+            throw new IllegalStateException("Expected binary chunk for file " + expectedUpload.getFileId());
+        }
+
+        expectedUpload = expectChunk(message.id, message.chunkNum);
+    }
+
+    private FileUpload expectChunk(String fileId, int chunkNum) {
+        FileUpload upload = fileUploads.get(fileId);
+
+        if (upload == null) {
+            throw new IllegalStateException("No file upload with id " + fileId + " in progress");
+        }
+
+        if (chunkNum != upload.getReceivedChunks()) {
+            throw new IllegalStateException("Invalid chunk sequence for file " + fileId +
+                    ". Expected: " + upload.getReceivedChunks() +
+                    ", got: " + chunkNum);
+        }
+        return upload;
+    }
+
+    private void handleBinaryFrame(byte[] data, int offset, int length) {
+        FileUpload upload = expectedUpload;
+        if (upload == null) {
+            throw new IllegalStateException("Unexpected binary data received");
+        }
+
+        expectedUpload = null;
+        receiveChunk(upload, data, offset, length);
+    }
+
+    private void receiveChunk(FileUpload upload, byte[] data, int offset, int length) {
+        try {
+            upload.acceptChunk(length);
+        } catch (RuntimeException e) {
+            fileUploads.remove(upload.getFileId());
+            runUploadIo(upload::discard);
+            throw e;
+        }
+
+        boolean complete = upload.isComplete();
+        if (complete) {
+            fileUploads.remove(upload.getFileId());
+        }
+
+        ByteBuffer chunk = uploadExecutor == null
+                ? ByteBuffer.wrap(data, offset, length)
+                : ByteBuffer.wrap(Arrays.copyOfRange(data, offset, offset + length));
+        long receivedAt = frameReceivedNanos;
+        pendingUploadBytes.addAndGet(length);
+        runUploadIo(() -> {
+            try {
+                if (upload.isDiscarded()) {
+                    return;
+                }
+                upload.writeChunk(chunk);
+                if (complete) {
+                    completeFileUpload(upload, receivedAt);
+                }
+            } catch (IOException | RuntimeException e) {
+                failUpload(upload, e);
+            } finally {
+                releasePendingUploadBytes(length);
+            }
+        });
+    }
+
+    private void runUploadIo(Runnable task) {
+        if (uploadExecutor == null) {
+            task.run();
+        } else {
+            uploadExecutor.execute(task);
+        }
+    }
+
+    private void releasePendingUploadBytes(long length) {
+        long pending = pendingUploadBytes.addAndGet(-length);
+        Runnable listener = uploadDrainedListener;
+        if (listener != null && pending < MAX_PENDING_UPLOAD_BYTES && pending + length >= MAX_PENDING_UPLOAD_BYTES) {
+            listener.run();
+        }
+    }
+
+    private void failUpload(FileUpload upload, Exception e) {
+        fileUploads.remove(upload.getFileId(), upload);
+        upload.discard();
+        ServerMetrics.dispatchFailed();
+        log.error("[{}] Error processing upload {}", clientInfo, upload.getFileId(), e);
+        session.send("error", "{\"error\":\"Server error\"}");
+    }
+
+    private void handleProtocolFrame(CommandTable commandTable, byte[] data, int offset, int length) throws Exception {
+        BinaryProtocol.Frame frame = BinaryProtocol.decode(data, offset, length, commandTable);
+
+        WebSocketRouteRegistry.RouteHandler handler = WebSocketRouteRegistry.getHandler(route, frame.command());
+        if (handler == null) {
+            throw new IllegalArgumentException("No handler found for command: " + frame.command());
+        }
+
+        switch (frame.type()) {
+            case BinaryProtocol.META_DATA, BinaryProtocol.RESUME -> {
+                if (!handler.isBinary()) {
+                    throw new IllegalArgumentException("Handler for command " + frame.command() + " is not binary");
+                }
+                startFileUpload(String.valueOf(frame.uploadId()), frame.command(), handler,
+                        frame.fileSize(), frame.totalChunks(), readMetaData(data, frame, handler),
+                        frame.type() == BinaryProtocol.RESUME);
+            }
+            case BinaryProtocol.CHUNK -> handleProtocolChunk(frame, data);
+            default -> processProtocolMessage(frame, data, handler);
+        }
+    }
+
+    private static Object readMetaData(byte[] data, BinaryProtocol.Frame frame,
+                                       WebSocketRouteRegistry.RouteHandler handler) {
+        try {
+            return BinaryProtocol.readValue(data, frame, handler.getParameterType());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid metadata format in 'message' field", e);
+        }
+    }
+
+    private void handleProtocolChunk(BinaryProtocol.Frame frame, byte[] data) {
+        FileUpload upload = expectChunk(String.valueOf(frame.uploadId()), frame.chunkNum());
+        receiveChunk(upload, data, frame.bodyOffset(), frame.bodyLength());
+    }
+
+    private void processProtocolMessage(BinaryProtocol.Frame frame, byte[] data,
+                                        WebSocketRouteRegistry.RouteHandler handler) throws IOException {
+        if (handler.isBinary()) {
+            throw new IllegalArgumentException("Handler for command " + frame.command() + " expects binary data");
+        }
+
+        Class<?> paramType = handler.getParameterType();
+        Object paramValue;
+
+        if (paramType == String.class) {
+            byte[] envelope = WebSocketSession.encodeText(frame.command(), BinaryProtocol.readTree(data, frame));
+            paramValue = new String(envelope, StandardCharsets.UTF_8);
+        } else {
+            paramValue = BinaryProtocol.readValue(data, frame, paramType);
+        }
+
+        submitHandler(handler, paramValue);
+    }
+
+    private void completeFileUpload(FileUpload upload, long receivedAt) throws IOException {
+        upload.closeChannel();
+        threadPool.submit(() -> {
+            try {
+                upload.getHandler().getMetrics().recordDispatch(System.nanoTime() - receivedAt);
+                sessionManager.setCurrentSession(session);
+                invokeBinaryHandler(upload);
+            } catch (DatabaseOverloadedException e) {
+                rejectOverloaded(e);
+            } catch (Exception e) {
+                log.error("[{}] Controller handler error: ", clientInfo, e);
+            } finally {
+                upload.discard();
+            }
+        });
+
+        log.info("[{}] File {} uploaded successfully", clientInfo, upload.getFileId());
+    }
+
+    private void invokeBinaryHandler(FileUpload upload) throws Exception {
+        WebSocketRouteRegistry.RouteHandler handler = upload.getHandler();
+        Class<?> payloadType = handler.getPayloadType();
+        Path file = upload.getFile();
+
+        if (payloadType == Path.class) {
+            handler.invoke(upload.getMetadata(), file);
+        } else if (payloadType == FileChannel.class) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                handler.invoke(upload.getMetadata(), channel);
+            }
+        } else if (payloadType == InputStream.class) {
+            try (InputStream input = Files.newInputStream(file)) {
+                handler.invoke(upload.getMetadata(), input);
+            }
+        } else {
+            handler.invoke(upload.getMetadata(), Files.readAllBytes(file));
+        }
+    }
+
+    public void close() {
+        List<FileUpload> uploads = List.copyOf(fileUploads.values());
+        fileUploads.clear();
+        expectedUpload = null;
+        uploadDrainedListener = null;
+        runUploadIo(() -> uploads.stream()
+                .filter(upload -> !upload.isDiscarded())
+                .forEach(upload -> UploadRegistry.park(route, upload)));
+    }
+
+    private void processRegularMessage(InboundMessage message, byte[] data, int offset, int length,
+                                       WebSocketRouteRegistry.RouteHandler handler) throws Exception {
+        if (handler.isBinary()) {
+            throw new IllegalArgumentException("Handler for command " + message.command + " expects binary data");
+        }
+
+        Class<?> paramType = handler.getParameterType();
+        Object paramValue;
+
+        if (paramType == String.class) {
+            paramValue = new String(data, offset, length, StandardCharsets.UTF_8);
+        } else {
+            paramValue = messageValue(message, paramType);
+        }
+
+        submitHandler(handler, paramValue);
+    }
+
+    private void submitHandler(WebSocketRouteRegistry.RouteHandler handler, Object paramValue) {
+        long receivedAt = frameReceivedNanos;
+        threadPool.submit(() -> {
+            try {
+                handler.getMetrics().recordDispatch(System.nanoTime() - receivedAt);
+                sessionManager.setCurrentSession(session);
+                handler.invoke(paramValue);
+            } catch (DatabaseOverloadedException e) {
+                rejectOverloaded(e);
+            } catch (Exception e) {
+                log.error("[{}] Controller handler error: ", clientInfo, e);
+            }
+        });
+    }
+
+    private void rejectOverloaded(DatabaseOverloadedException e) {
+        log.warn("[{}] Request rejected: {}", clientInfo, e.getMessage());
+        session.send("error", "{\"error\":\"Server busy\"}");
+    }
+}
@@ -0,0 +1,18 @@
+package com.project;
+
+import java.util.Set;
+
+/**
+ * Route table and controller wiring for one controller package, generated at build time by
+ * {@code com.project.processor.WebSocketRouteProcessor} and discovered through {@link java.util.ServiceLoader}.
+ */
+public interface WebSocketRouteModule {
+    String getPackageName();
+
+    /**
+     * Controllers this module registers; any other controller in the package is registered by classpath scan.
+     */
+    Set<Class<?>> getControllerClasses();
+
+    void register();
+}
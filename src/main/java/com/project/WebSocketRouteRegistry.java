@@ -4,13 +4,28 @@ import com.project.annotation.Binary;
 import com.project.annotation.Command;
 import com.project.annotation.WebSocketRoute;
 
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InputStream;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+@Slf4j
 public class WebSocketRouteRegistry {
     private static final Map<String, Map<String, RouteHandler>> routeHandlers = new HashMap<>();
-    private static final Map<Method, Object> controllerInstances = new HashMap<>();
+    private static final Map<String, CommandTable> commandTables = new ConcurrentHashMap<>();
+    private static final Set<Class<?>> BINARY_PAYLOAD_TYPES =
+            Set.of(byte[].class, Path.class, FileChannel.class, InputStream.class);
 
     public static void registerController(Object controller) {
         Class<?> controllerClass = controller.getClass();
@@ -19,6 +34,7 @@ public class WebSocketRouteRegistry {
         }
 
         String route = controllerClass.getAnnotation(WebSocketRoute.class).route();
+        injectSessionManager(controller);
 
         for (Method method : controllerClass.getDeclaredMethods()) {
             if (method.isAnnotationPresent(Command.class)) {
@@ -28,26 +44,67 @@ public class WebSocketRouteRegistry {
                 boolean isBinary = method.isAnnotationPresent(Binary.class);
                 validateMethodParameters(method, isBinary);
 
-                RouteHandler handler = new RouteHandler(method, isBinary);
+                RouteHandler handler = new RouteHandler(method, isBinary, controller,
+                        ServerMetrics.command(route, command));
 
-                routeHandlers.computeIfAbsent(route, k -> new HashMap<>())
-                        .put(command, handler);
-                controllerInstances.put(method, controller);
+                register(route, command, handler);
             }
         }
     }
 
+    public static void registerHandler(String route, String command, Object controller, Class<?> parameterType,
+                                       MessageInvoker invoker) {
+        register(route, command, new RouteHandler(null, controller, parameterType, null, invoker, null,
+                ServerMetrics.command(route, command)));
+    }
+
+    public static void registerBinaryHandler(String route, String command, Object controller, Class<?> parameterType,
+                                             Class<?> payloadType, BinaryInvoker invoker) {
+        if (!BINARY_PAYLOAD_TYPES.contains(payloadType)) {
+            throw new IllegalArgumentException(
+                    "Second parameter of @Binary method must be byte[], Path, FileChannel or InputStream");
+        }
+        register(route, command, new RouteHandler(null, controller, parameterType, payloadType, null, invoker,
+                ServerMetrics.command(route, command)));
+    }
+
+    private static void register(String route, String command, RouteHandler handler) {
+        routeHandlers.computeIfAbsent(route, k -> new HashMap<>()).put(command, handler);
+        commandTables.remove(route);
+    }
+
+    private static void injectSessionManager(Object controller) {
+        Method setSession;
+        try {
+            setSession = controller.getClass().getMethod("setSession", WebSocketSessionManager.class);
+        } catch (NoSuchMethodException e) {
+            log.debug("Controller {} doesn't require session", controller.getClass().getName());
+            return;
+        }
+
+        WebSocketSessionManager sessionManager = DIContainer.getSingleton(WebSocketSessionManager.class);
+        if (sessionManager == null) {
+            sessionManager = (WebSocketSessionManager) DIContainer.createOrGetInstance(WebSocketSessionManager.class);
+        }
+
+        try {
+            setSession.invoke(controller, sessionManager);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to inject session manager into " + controller.getClass().getName(), e);
+        }
+    }
+
     private static void validateMethodParameters(Method method, boolean isBinary) {
         Class<?>[] paramTypes = method.getParameterTypes();
 
         if (isBinary) {
             if (paramTypes.length != 2) {
                 throw new IllegalArgumentException(
-                        "@Binary method must have exactly 2 parameters: Object and byte[]");
+                        "@Binary method must have exactly 2 parameters: Object and file payload");
             }
-            if (paramTypes[1] != byte[].class) {
+            if (!BINARY_PAYLOAD_TYPES.contains(paramTypes[1])) {
                 throw new IllegalArgumentException(
-                        "Second parameter of @Binary method must be byte[]");
+                        "Second parameter of @Binary method must be byte[], Path, FileChannel or InputStream");
             }
         } else {
             if (paramTypes.length != 1) {
@@ -65,25 +122,154 @@ public class WebSocketRouteRegistry {
         return commandHandlers.get(command);
     }
 
-    public static Object getControllerInstance(Method method) {
-        return controllerInstances.get(method);
+    public static CommandTable getCommandTable(String route) {
+        return commandTables.computeIfAbsent(route, r -> new CommandTable(
+                routeHandlers.getOrDefault(r, Map.of()).keySet()));
+    }
+
+    @FunctionalInterface
+    public interface MessageInvoker {
+        void invoke(Object message) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface BinaryInvoker {
+        void invoke(Object metadata, Object payload) throws Exception;
     }
 
     public static class RouteHandler {
         private final Method method;
         private final boolean isBinary;
+        private final Object controller;
+        private final Class<?> parameterType;
+        private final Class<?> payloadType;
+        private final MessageInvoker messageInvoker;
+        private final BinaryInvoker binaryInvoker;
+        private final ServerMetrics.CommandMetrics metrics;
+
+        public RouteHandler(Method method, boolean isBinary, Object controller, ServerMetrics.CommandMetrics metrics) {
+            this(method, controller, method.getParameterTypes()[0], isBinary ? method.getParameterTypes()[1] : null,
+                    isBinary ? null : compile(MessageInvoker.class, unreflect(method), controller,
+                            MethodType.methodType(void.class, Object.class)),
+                    isBinary ? compile(BinaryInvoker.class, unreflect(method), controller,
+                            MethodType.methodType(void.class, Object.class, Object.class)) : null,
+                    metrics);
+        }
 
-        public RouteHandler(Method method, boolean isBinary) {
+        /**
+         * Handler with prebuilt invokers, as registered by generated route modules; {@code method} is null then.
+         */
+        RouteHandler(Method method, Object controller, Class<?> parameterType, Class<?> payloadType,
+                     MessageInvoker messageInvoker, BinaryInvoker binaryInvoker, ServerMetrics.CommandMetrics metrics) {
             this.method = method;
-            this.isBinary = isBinary;
+            this.metrics = metrics;
+            this.isBinary = binaryInvoker != null;
+            this.controller = controller;
+            this.parameterType = parameterType;
+            this.payloadType = payloadType;
+            this.messageInvoker = messageInvoker;
+            this.binaryInvoker = binaryInvoker;
+        }
+
+        private static MethodHandle unreflect(Method method) {
+            try {
+                return MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup())
+                        .unreflect(method);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Handler method " + method + " is not accessible", e);
+            }
+        }
+
+        private static <T> T compile(Class<T> invokerType, MethodHandle target, Object controller, MethodType samType) {
+            Class<?> controllerClass = target.type().parameterType(0);
+            MethodType instantiatedType = target.type().dropParameterTypes(0, 1)
+                    .changeReturnType(void.class)
+                    .wrap()
+                    .changeReturnType(void.class);
+
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(controllerClass, MethodHandles.lookup());
+                CallSite site = LambdaMetafactory.metafactory(
+                        lookup,
+                        "invoke",
+                        MethodType.methodType(invokerType, controllerClass),
+                        samType,
+                        target,
+                        instantiatedType);
+                return invokerType.cast(site.getTarget().invoke(controller));
+            } catch (Throwable e) {
+                log.debug("Falling back to method handle dispatch for {}: {}", target, e.toString());
+                return bind(invokerType, target.bindTo(controller).asType(samType));
+            }
+        }
+
+        private static <T> T bind(Class<T> invokerType, MethodHandle bound) {
+            if (invokerType == MessageInvoker.class) {
+                return invokerType.cast((MessageInvoker) message -> {
+                    try {
+                        bound.invokeExact(message);
+                    } catch (Exception | Error e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            return invokerType.cast((BinaryInvoker) (metadata, payload) -> {
+                try {
+                    bound.invokeExact(metadata, payload);
+                } catch (Exception | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            });
         }
 
         public Method getMethod() {
             return method;
         }
 
+        public Object getController() {
+            return controller;
+        }
+
         public boolean isBinary() {
             return isBinary;
         }
+
+        public Class<?> getParameterType() {
+            return parameterType;
+        }
+
+        public Class<?> getPayloadType() {
+            return payloadType;
+        }
+
+        public ServerMetrics.CommandMetrics getMetrics() {
+            return metrics;
+        }
+
+        public void invoke(Object message) throws Exception {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                messageInvoker.invoke(message);
+                failed = false;
+            } finally {
+                metrics.recordHandler(System.nanoTime() - start, failed);
+            }
+        }
+
+        public void invoke(Object metadata, Object payload) throws Exception {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                binaryInvoker.invoke(metadata, payload);
+                failed = false;
+            } finally {
+                metrics.recordHandler(System.nanoTime() - start, failed);
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -6,11 +6,21 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
 public class WebSocketSession {
@@ -19,101 +29,489 @@ public class WebSocketSession {
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
+    private static final EnvelopeEncoder envelopeEncoder = new EnvelopeEncoder(objectMapper);
     private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long DEFAULT_MAX_QUEUED_BYTES = 16 * 1024 * 1024;
+    private static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 5000;
+    private static final ThreadLocal<Boolean> nonBlockingThread = ThreadLocal.withInitial(() -> false);
+
+    public enum OverflowPolicy {
+        BLOCK,
+        /**
+         * Evicts file transfers that have not started sending; disconnects if that does not free enough room,
+         * since queued chat messages are never dropped.
+         */
+        DROP_OLDEST,
+        DISCONNECT
+    }
+
+    private final long maxQueuedBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private volatile int blockedProducers;
 
     private final BlockingQueue<MessageWrapper> highPriorityQueue = new LinkedBlockingQueue<>();
-    private final BlockingQueue<MessageWrapper> lowPriorityQueue = new LinkedBlockingQueue<>();
+    private final TransferScheduler transferScheduler = new TransferScheduler();
     private final AtomicInteger fileIdGenerator = new AtomicInteger(0);
 
-    public record MessageWrapper(byte[] data, boolean isBinary, boolean isPartChunk) {}
+    public record MessageWrapper(ByteBuffer header, ByteBuffer payload, FileTransfer.FileRegion region,
+                                 boolean isBinary, ByteBuffer frame) {
+
+        public static MessageWrapper text(byte[] data) {
+            return new MessageWrapper(null, ByteBuffer.wrap(data), null, false, null);
+        }
+
+        public static MessageWrapper binary(ByteBuffer data) {
+            return new MessageWrapper(null, data, null, true, null);
+        }
+
+        public static MessageWrapper file(FileTransfer.FileRegion region) {
+            return new MessageWrapper(null, null, region, true, null);
+        }
+
+        public static MessageWrapper shared(byte[] data, boolean isBinary) {
+            return new MessageWrapper(null, ByteBuffer.wrap(data).asReadOnlyBuffer(), null, isBinary,
+                    WebSocketFrameEncoder.frame(data, isBinary).asReadOnlyBuffer());
+        }
+
+        public MessageWrapper withHeader(ByteBuffer header) {
+            return new MessageWrapper(header, payload, region, isBinary, null);
+        }
+
+        public long length() {
+            long length = region != null ? region.length() : payload.remaining();
+            return header != null ? length + header.remaining() : length;
+        }
 
-    public boolean isNextChunk;
+        public void release() {
+            if (region != null) {
+                region.release();
+            }
+        }
+    }
+
+    private final AtomicReference<MessageWrapper> pendingChunk = new AtomicReference<>();
+    private volatile CommandTable commandTable;
+    private volatile Runnable outboundListener;
+    private volatile boolean writerWaiting;
+    private volatile boolean closed;
+    private final ReentrantLock outboundLock = new ReentrantLock();
+    private final Condition messageQueued = outboundLock.newCondition();
+    private final Condition spaceAvailable = outboundLock.newCondition();
+
+    public WebSocketSession() {
+        this(EnvConfig.getLong("WS_OUTBOUND_MAX_BYTES", DEFAULT_MAX_QUEUED_BYTES),
+                OverflowPolicy.valueOf(EnvConfig.getString("WS_OUTBOUND_OVERFLOW_POLICY", "BLOCK").toUpperCase(Locale.ROOT)),
+                EnvConfig.getLong("WS_OUTBOUND_BLOCK_TIMEOUT_MILLIS", DEFAULT_BLOCK_TIMEOUT_MILLIS));
+    }
+
+    public WebSocketSession(long maxQueuedBytes, OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+    }
+
+    public static void markNonBlockingThread() {
+        nonBlockingThread.set(true);
+    }
+
+    /**
+     * Runs {@code task} with the BLOCK policy treated as a disconnect, as on a thread marked with
+     * {@link #markNonBlockingThread()}, and restores the caller's setting afterwards.
+     */
+    public static void runNonBlocking(Runnable task) {
+        boolean previous = nonBlockingThread.get();
+        nonBlockingThread.set(true);
+        try {
+            task.run();
+        } finally {
+            nonBlockingThread.set(previous);
+        }
+    }
+
+    public void setOutboundListener(Runnable outboundListener) {
+        this.outboundListener = outboundListener;
+    }
+
+    private void notifyOutbound() {
+        if (writerWaiting) {
+            outboundLock.lock();
+            try {
+                messageQueued.signal();
+            } finally {
+                outboundLock.unlock();
+            }
+        }
+
+        Runnable listener = outboundListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    public void useBinaryProtocol(CommandTable commandTable) {
+        this.commandTable = commandTable;
+        try {
+            enqueue(MessageWrapper.binary(ByteBuffer.wrap(BinaryProtocol.encodeCommandTable(commandTable))));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to send command table", e);
+        }
+    }
+
+    public CommandTable getCommandTable() {
+        return commandTable;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void close() {
+        closed = true;
+        outboundLock.lock();
+        try {
+            messageQueued.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            outboundLock.unlock();
+        }
+        outboundListener = null;
+        highPriorityQueue.clear();
+
+        transferScheduler.closeAll();
+        releasePendingChunk();
+        queuedBytes.set(0);
+    }
+
+    private void releasePendingChunk() {
+        MessageWrapper chunk = pendingChunk.getAndSet(null);
+        if (chunk != null) {
+            chunk.release();
+        }
+    }
+
+    private void disconnect(long size) {
+        log.warn("Disconnecting slow consumer: {} bytes queued, {} bytes rejected", queuedBytes.get(), size);
+        recordDrop(size);
+        Runnable listener = outboundListener;
+        close();
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private boolean reserve(long size) {
+        if (tryReserve(size)) {
+            return true;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST -> {
+                dropOldest(size);
+                if (tryReserve(size)) {
+                    return true;
+                }
+                disconnect(size);
+                return false;
+            }
+            case BLOCK -> {
+                if (!nonBlockingThread.get() && awaitCapacity(size)) {
+                    return true;
+                }
+                if (!closed) {
+                    disconnect(size);
+                }
+                return false;
+            }
+            default -> {
+                disconnect(size);
+                return false;
+            }
+        }
+    }
+
+    private boolean tryReserve(long size) {
+        while (true) {
+            long current = queuedBytes.get();
+            if (current > 0 && current + size > maxQueuedBytes) {
+                return false;
+            }
+            if (queuedBytes.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean awaitCapacity(long size) {
+        long remaining = blockTimeoutNanos;
+        outboundLock.lock();
+        try {
+            blockedProducers++;
+            while (!closed && !tryReserve(size)) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = spaceAvailable.awaitNanos(remaining);
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            blockedProducers--;
+            outboundLock.unlock();
+        }
+    }
+
+    private void releaseBytes(long size) {
+        if (size == 0) {
+            return;
+        }
+        queuedBytes.addAndGet(-size);
+        if (blockedProducers > 0) {
+            outboundLock.lock();
+            try {
+                spaceAvailable.signalAll();
+            } finally {
+                outboundLock.unlock();
+            }
+        }
+    }
+
+    private void dropOldest(long size) {
+        FileTransfer transfer;
+        while (queuedBytes.get() + size > maxQueuedBytes && (transfer = transferScheduler.pollNotStarted()) != null) {
+            long buffered = transfer.getBufferedBytes();
+            transfer.close();
+            recordDrop(buffered);
+            releaseBytes(buffered);
+        }
+    }
+
+    private void recordDrop(long size) {
+        droppedMessages.incrementAndGet();
+        droppedBytes.addAndGet(size);
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    public int getQueuedMessages() {
+        return highPriorityQueue.size() + transferScheduler.size();
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    public List<FileTransfer.TransferStats> getTransferStats() {
+        return transferScheduler.stats();
+    }
 
     public void send(String command, Object message) {
+        CommandTable table = commandTable;
+        if (table == null) {
+            enqueue(MessageWrapper.text(encodeText(command, message)));
+        } else {
+            enqueue(MessageWrapper.binary(ByteBuffer.wrap(encodeBinary(table, command, message))));
+        }
+    }
+
+    public void enqueue(MessageWrapper message) {
+        if (closed || !reserve(message.length())) {
+            return;
+        }
+        highPriorityQueue.add(message);
+        notifyOutbound();
+    }
+
+    public static byte[] encodeText(String command, Object message) {
         try {
-            ObjectNode json = objectMapper.createObjectNode();
-            json.put("command", command);
-            json.put("type", "text");
-            json.set("message", objectMapper.valueToTree(message));
+            return envelopeEncoder.encodeText(command, message);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to send message", e);
+        }
+    }
 
-            byte[] data = objectMapper.writeValueAsBytes(json);
-            highPriorityQueue.put(new MessageWrapper(data, false, false));
+    public static byte[] encodeBinary(CommandTable table, String command, Object message) {
+        try {
+            return BinaryProtocol.encodeText(table, command, message);
         } catch (Exception e) {
             throw new RuntimeException("Failed to send message", e);
         }
     }
 
     public void sendFile(String command, byte[] fileData, Object metadata) {
+        if (closed) {
+            return;
+        }
+        enqueueTransfer(FileTransfer.ofBytes(command, fileIdGenerator.incrementAndGet(), fileData, CHUNK_SIZE), metadata);
+    }
+
+    public void sendFile(String command, Path file, Object metadata) {
+        if (closed) {
+            return;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            enqueueTransfer(FileTransfer.ofChannel(command, fileIdGenerator.incrementAndGet(), channel, CHUNK_SIZE), metadata);
+        } catch (IOException e) {
+            if (channel != null) {
+                FileTransfer.FileRegion.closeQuietly(channel);
+            }
+            throw new RuntimeException("Failed to send file", e);
+        }
+    }
+
+    private void enqueueTransfer(FileTransfer transfer, Object metadata) {
         try {
-            String fileId = "file-" + fileIdGenerator.incrementAndGet();
-            int totalChunks = (int) Math.ceil((double) fileData.length / CHUNK_SIZE);
-
-            ObjectNode metaData = objectMapper.createObjectNode();
-            metaData.put("command", command);
-            metaData.put("type", "metaData");
-            metaData.put("id", fileId);
-            metaData.put("fileSize", fileData.length);
-            metaData.put("totalChunks", totalChunks);
-            metaData.set("message", objectMapper.valueToTree(metadata));
-
-            log.debug(String.valueOf(metaData));
-            lowPriorityQueue.put(new MessageWrapper(
-                    objectMapper.writeValueAsBytes(metaData), false, false));
-
-            for (int i = 0; i < totalChunks; i++) {
-                int offset = i * CHUNK_SIZE;
-                int chunkSize = Math.min(CHUNK_SIZE, fileData.length - offset);
-                byte[] chunk = Arrays.copyOfRange(fileData, offset, offset + chunkSize);
-
-                ObjectNode preChunk = objectMapper.createObjectNode();
-                preChunk.put("command", command);
-                preChunk.put("type", "preChunk");
-                preChunk.put("id", fileId);
-                preChunk.put("chunkSize", chunkSize);
-                preChunk.put("chunkNum", i);
-
-                lowPriorityQueue.put(new MessageWrapper(
-                        objectMapper.writeValueAsBytes(preChunk), false, true));
-                lowPriorityQueue.put(new MessageWrapper(chunk, true, true));
-                log.debug(String.valueOf(preChunk));
+            transfer.setMetaDataMessage(encodeMetaData(transfer, metadata));
+            if (!reserve(transfer.getBufferedBytes())) {
+                transfer.close();
+                return;
             }
+            transferScheduler.add(transfer);
+            notifyOutbound();
         } catch (Exception e) {
+            transfer.close();
             throw new RuntimeException("Failed to send file", e);
         }
     }
 
-    public MessageWrapper poll(int timeout, TimeUnit unit) throws InterruptedException {
-        MessageWrapper message;
-        if (isNextChunk && lowPriorityQueue.isEmpty()) {
-            return null;
-        } else if (isNextChunk) {
-            message = lowPriorityQueue.poll(timeout, unit);
-            isNextChunk = false;
-            printMessage(message);
+    private byte[] encodeMetaData(FileTransfer transfer, Object metadata) throws IOException {
+        CommandTable table = commandTable;
+        if (table != null) {
+            return BinaryProtocol.encodeMetaData(table, transfer.getCommand(), transfer.getId(),
+                    transfer.getFileSize(), transfer.getTotalChunks(), metadata);
+        }
+        return envelopeEncoder.encodeMetaData(transfer.getCommand(), transfer.getFileId(),
+                transfer.getFileSize(), transfer.getTotalChunks(), metadata);
+    }
+
+    private byte[] encodePreChunk(FileTransfer transfer) throws IOException {
+        return envelopeEncoder.encodePreChunk(transfer.getCommand(), transfer.getFileId(),
+                transfer.getNextChunkSize(), transfer.getNextChunkNum());
+    }
+
+    public MessageWrapper poll() {
+        MessageWrapper message = pendingChunk.getAndSet(null);
+        if (message != null) {
             return message;
         }
-        if (highPriorityQueue.isEmpty() && lowPriorityQueue.isEmpty()) {
-            return null;
+
+        message = pollHighPriority();
+        if (message == null) {
+            FileTransfer transfer = transferScheduler.next();
+            if (transfer != null) {
+                message = nextTransferMessage(transfer);
+            }
         }
-        if (lowPriorityQueue.isEmpty()) {
-            message = highPriorityQueue.poll(timeout, unit);
+
+        if (message != null && log.isDebugEnabled()) {
             printMessage(message);
+        }
+        return message;
+    }
+
+    private MessageWrapper pollHighPriority() {
+        MessageWrapper message = highPriorityQueue.poll();
+        if (message != null) {
+            releaseBytes(message.length());
+        }
+        return message;
+    }
+
+    private MessageWrapper nextTransferMessage(FileTransfer transfer) {
+        CommandTable table = commandTable;
+        long buffered = transfer.getBufferedBytes();
+        MessageWrapper message;
+        try {
+            if (!transfer.isMetaDataSent()) {
+                message = table == null
+                        ? MessageWrapper.text(transfer.getMetaDataMessage())
+                        : MessageWrapper.binary(ByteBuffer.wrap(transfer.getMetaDataMessage()));
+                transfer.markMetaDataSent();
+            } else if (table != null) {
+                ByteBuffer header = BinaryProtocol.encodeChunkHeader(table, transfer.getCommand(),
+                        transfer.getId(), transfer.getNextChunkNum());
+                message = transfer.takeChunk().withHeader(header);
+            } else {
+                message = MessageWrapper.text(encodePreChunk(transfer));
+                pendingChunk.set(transfer.takeChunk());
+                if (closed) {
+                    releasePendingChunk();
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to encode file transfer {}", transfer.getFileId(), e);
+            transferScheduler.remove(transfer);
+            transfer.close();
+            releaseBytes(buffered);
+            return pollHighPriority();
+        }
+        releaseBytes(buffered - transfer.getBufferedBytes());
+
+        if (transfer.isDone()) {
+            transferScheduler.remove(transfer);
+            if (transfer.getTotalChunks() == 0) {
+                transfer.close();
+            }
+        }
+        return message;
+    }
+
+    public MessageWrapper take() throws InterruptedException {
+        return awaitMessage(false, 0);
+    }
+
+    public MessageWrapper poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return awaitMessage(true, unit.toNanos(timeout));
+    }
+
+    private MessageWrapper awaitMessage(boolean timed, long timeoutNanos) throws InterruptedException {
+        MessageWrapper message = poll();
+        if (message != null || (timed && timeoutNanos <= 0)) {
             return message;
-        } else {
-            message = lowPriorityQueue.poll(timeout, unit);
-            assert message != null;
-            if (message.isPartChunk){
-                isNextChunk = true;
+        }
+
+        outboundLock.lock();
+        try {
+            writerWaiting = true;
+            while (!closed && (message = poll()) == null) {
+                if (!timed) {
+                    messageQueued.await();
+                } else if (timeoutNanos > 0) {
+                    timeoutNanos = messageQueued.awaitNanos(timeoutNanos);
+                } else {
+                    break;
+                }
             }
-            printMessage(message);
             return message;
+        } finally {
+            writerWaiting = false;
+            outboundLock.unlock();
         }
     }
 
+    public boolean hasPendingMessages() {
+        return pendingChunk.get() != null || !highPriorityQueue.isEmpty() || !transferScheduler.isEmpty();
+    }
+
     private void printMessage(MessageWrapper message) {
         try {
-            if (!message.isBinary) {
-                log.debug(objectMapper.readValue(message.data, ObjectNode.class).toString());
+            if (!message.isBinary()) {
+                byte[] payload = new byte[message.payload().remaining()];
+                message.payload().duplicate().get(payload);
+                log.debug(objectMapper.readValue(payload, ObjectNode.class).toString());
             } else {
                 log.debug("This is a binary message");
             }
@@ -1,32 +1,240 @@
 package com.project;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class WebSocketSessionManager {
-    private static final ConcurrentMap<UUID, Set<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
-    private static final ThreadLocal<WebSocketSession> currentSession = new ThreadLocal<>();
+    private static final int FANOUT_SHARD_SIZE = Math.max(1, EnvConfig.getInt("WS_TOPIC_FANOUT_SHARD_SIZE", 512));
+    private static final int PRESENCE_LOCK_STRIPES = 64;
+    private static final ExecutorService fanoutPool = Executors.newFixedThreadPool(
+            EnvConfig.getInt("WS_TOPIC_FANOUT_THREADS", Runtime.getRuntime().availableProcessors()),
+            nonBlockingFactory(Thread.ofPlatform().name("topic-fanout-", 0).daemon(true).factory()));
+
+    /**
+     * Fan-out threads are shared by every publisher, so a full subscriber queue disconnects that subscriber
+     * instead of stalling the shard under the BLOCK policy. {@link #publish} applies the same rule to the shard
+     * it enqueues on the caller's thread.
+     */
+    private static ThreadFactory nonBlockingFactory(ThreadFactory factory) {
+        return task -> factory.newThread(() -> {
+            WebSocketSession.markNonBlockingThread();
+            task.run();
+        });
+    }
+
+    private final ConcurrentMap<UUID, Set<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<WebSocketSession, Set<UUID>> sessionUsers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<WebSocketSession>> topicSessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<WebSocketSession, Set<String>> sessionTopics = new ConcurrentHashMap<>();
+    private final ThreadLocal<WebSocketSession> currentSession = new ThreadLocal<>();
+    private final ReentrantLock[] presenceLocks = new ReentrantLock[PRESENCE_LOCK_STRIPES];
+    private volatile ClusterBackplane backplane;
+
+    public WebSocketSessionManager() {
+        Arrays.setAll(presenceLocks, i -> new ReentrantLock());
+    }
 
     public void registerSession(UUID userId) {
         Objects.requireNonNull(userId, "User ID cannot be null");
 
         WebSocketSession session = currentSession.get();
         if (session != null) {
+            addUserSession(userId, session);
+            sessionUsers.computeIfAbsent(session, key -> ConcurrentHashMap.newKeySet()).add(userId);
+
+            if (session.isClosed()) {
+                unregisterSession(session);
+            }
+        }
+    }
+
+    public void unregisterSession(WebSocketSession session) {
+        Objects.requireNonNull(session, "Session cannot be null");
+        Set<UUID> userIds = sessionUsers.remove(session);
+        if (userIds != null) {
+            userIds.forEach(userId -> removeUserSession(userId, session));
+        }
+
+        Set<String> topics = sessionTopics.remove(session);
+        if (topics != null) {
+            topics.forEach(topic -> removeFrom(topicSessions, topic, session));
+        }
+    }
+
+    private void addUserSession(UUID userId, WebSocketSession session) {
+        ReentrantLock lock = presenceLock(userId);
+        lock.lock();
+        try {
+            boolean[] online = new boolean[1];
             userSessions.compute(userId, (key, sessions) -> {
                 if (sessions == null) {
-                    sessions = new CopyOnWriteArraySet<>();
+                    sessions = ConcurrentHashMap.newKeySet();
+                    online[0] = true;
                 }
                 sessions.add(session);
                 return sessions;
             });
+            ClusterBackplane cluster = backplane;
+            if (online[0] && cluster != null) {
+                cluster.userOnline(userId);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public void unregisterSession(WebSocketSession session) {
-        Objects.requireNonNull(session, "Session cannot be null");
-        userSessions.values().forEach(sessions -> sessions.remove(session));
+    private void removeUserSession(UUID userId, WebSocketSession session) {
+        ReentrantLock lock = presenceLock(userId);
+        lock.lock();
+        try {
+            boolean[] offline = new boolean[1];
+            userSessions.computeIfPresent(userId, (key, sessions) -> {
+                sessions.remove(session);
+                offline[0] = sessions.isEmpty();
+                return offline[0] ? null : sessions;
+            });
+            ClusterBackplane cluster = backplane;
+            if (offline[0] && cluster != null) {
+                cluster.userOffline(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Presence transitions are computed atomically by the map and announced to the backplane after the update,
+     * under a per-user stripe so that a user's online and offline events reach it in the order they happened.
+     */
+    private ReentrantLock presenceLock(UUID userId) {
+        return presenceLocks[userId.hashCode() & (PRESENCE_LOCK_STRIPES - 1)];
+    }
+
+    private static <K> void removeFrom(ConcurrentMap<K, Set<WebSocketSession>> index, K key, WebSocketSession session) {
+        index.computeIfPresent(key, (k, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    public void subscribe(String topic) {
+        Objects.requireNonNull(topic, "Topic cannot be null");
+
+        WebSocketSession session = currentSession.get();
+        if (session != null) {
+            topicSessions.compute(topic, (key, sessions) -> {
+                if (sessions == null) {
+                    sessions = ConcurrentHashMap.newKeySet();
+                }
+                sessions.add(session);
+                return sessions;
+            });
+            sessionTopics.computeIfAbsent(session, key -> ConcurrentHashMap.newKeySet()).add(topic);
+
+            if (session.isClosed()) {
+                unregisterSession(session);
+            }
+        }
+    }
+
+    public void unsubscribe(String topic) {
+        Objects.requireNonNull(topic, "Topic cannot be null");
+
+        WebSocketSession session = currentSession.get();
+        if (session != null) {
+            Set<String> topics = sessionTopics.get(session);
+            if (topics != null) {
+                topics.remove(topic);
+            }
+            removeFrom(topicSessions, topic, session);
+        }
+    }
+
+    /**
+     * Enqueues the message for every subscriber of {@code topic} without waiting on a slow one: under the BLOCK
+     * policy a full subscriber queue disconnects that subscriber, whether its shard runs here or on the pool.
+     * Topics are node-local; the cluster backplane does not carry them.
+     */
+    public void publish(String topic, String command, Object message) {
+        Objects.requireNonNull(topic, "Topic cannot be null");
+        Set<WebSocketSession> sessions = topicSessions.get(topic);
+        if (sessions == null) {
+            return;
+        }
+
+        SharedMessage shared = new SharedMessage(command, message);
+        if (sessions.size() <= FANOUT_SHARD_SIZE) {
+            WebSocketSession.runNonBlocking(() -> sessions.forEach(shared::enqueue));
+            return;
+        }
+
+        WebSocketSession[] subscribers = sessions.toArray(new WebSocketSession[0]);
+        List<Future<?>> shards = new ArrayList<>();
+        for (int from = FANOUT_SHARD_SIZE; from < subscribers.length; from += FANOUT_SHARD_SIZE) {
+            int start = from;
+            int end = Math.min(from + FANOUT_SHARD_SIZE, subscribers.length);
+            shards.add(fanoutPool.submit(() -> enqueueAll(subscribers, start, end, shared)));
+        }
+        WebSocketSession.runNonBlocking(
+                () -> enqueueAll(subscribers, 0, Math.min(FANOUT_SHARD_SIZE, subscribers.length), shared));
+
+        try {
+            for (Future<?> shard : shards) {
+                shard.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while publishing to topic " + topic, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to publish to topic " + topic, e.getCause());
+        }
+    }
+
+    private static void enqueueAll(WebSocketSession[] sessions, int start, int end, SharedMessage message) {
+        for (int i = start; i < end; i++) {
+            message.enqueue(sessions[i]);
+        }
+    }
+
+    /**
+     * Sender for the subscribers of {@code topic} connected to this node.
+     */
+    public SessionSender topic(String topic) {
+        Objects.requireNonNull(topic, "Topic cannot be null");
+        return new MultiSessionWrapper(topicSessions.getOrDefault(topic, Collections.emptySet()));
+    }
+
+    public int getSubscriberCount(String topic) {
+        Set<WebSocketSession> sessions = topicSessions.get(topic);
+        return sessions == null ? 0 : sessions.size();
+    }
+
+    public void setBackplane(ClusterBackplane clusterBackplane) {
+        Objects.requireNonNull(clusterBackplane, "Backplane cannot be null");
+        if (backplane != null) {
+            throw new IllegalStateException("Cluster backplane already set");
+        }
+        backplane = clusterBackplane;
+        clusterBackplane.start(this::deliverLocal);
+        userSessions.keySet().forEach(clusterBackplane::userOnline);
+    }
+
+    private void deliverLocal(Collection<UUID> userIds, String command, JsonNode message) {
+        localSessions(userIds).send(command, message);
+    }
+
+    private SessionSender withBackplane(SessionSender local, Collection<UUID> userIds) {
+        ClusterBackplane cluster = backplane;
+        return cluster == null ? local : new ClusterSessionWrapper(local, userIds, cluster);
     }
 
     public void setCurrentSession(WebSocketSession session) {
@@ -44,24 +252,69 @@ public class WebSocketSessionManager {
     public SessionSender otherSession(UUID userId) {
         Objects.requireNonNull(userId, "User ID cannot be null");
         Set<WebSocketSession> sessions = userSessions.get(userId);
-        if (sessions != null && !sessions.isEmpty()) {
-            return new SingleSessionWrapper(sessions.iterator().next());
+        if (sessions != null) {
+            Iterator<WebSocketSession> iterator = sessions.iterator();
+            if (iterator.hasNext()) {
+                return new SingleSessionWrapper(iterator.next());
+            }
         }
-        return new SingleSessionWrapper(null);
+        return withBackplane(new SingleSessionWrapper(null), List.of(userId));
     }
 
     public SessionSender otherSessions(UUID userId) {
         Objects.requireNonNull(userId, "User ID cannot be null");
         Set<WebSocketSession> sessions = userSessions.getOrDefault(userId, Collections.emptySet());
-        return new MultiSessionWrapper(sessions);
+        return withBackplane(new MultiSessionWrapper(sessions), List.of(userId));
     }
 
     public SessionSender otherSessions(Collection<UUID> userIds) {
         Objects.requireNonNull(userIds, "User IDs cannot be null");
-        Set<WebSocketSession> allSessions = new HashSet<>();
-        for (UUID userId : userIds) {
-            allSessions.addAll(userSessions.getOrDefault(userId, Collections.emptySet()));
+        return withBackplane(localSessions(userIds), userIds);
+    }
+
+    private SessionSender localSessions(Collection<UUID> userIds) {
+        Collection<UUID> distinctIds = userIds instanceof Set ? userIds : new LinkedHashSet<>(userIds);
+        if (distinctIds.size() == 1) {
+            return new MultiSessionWrapper(userSessions.getOrDefault(distinctIds.iterator().next(), Collections.emptySet()));
+        }
+
+        List<WebSocketSession> allSessions = new ArrayList<>();
+        Set<WebSocketSession> sharedSessions = null;
+        for (UUID userId : distinctIds) {
+            Set<WebSocketSession> sessions = userSessions.get(userId);
+            if (sessions == null) {
+                continue;
+            }
+            for (WebSocketSession session : sessions) {
+                if (isShared(session)) {
+                    if (sharedSessions == null) {
+                        sharedSessions = new HashSet<>();
+                    }
+                    if (!sharedSessions.add(session)) {
+                        continue;
+                    }
+                }
+                allSessions.add(session);
+            }
         }
         return new MultiSessionWrapper(allSessions);
     }
-}
\ No newline at end of file
+
+    private boolean isShared(WebSocketSession session) {
+        Set<UUID> userIds = sessionUsers.get(session);
+        return userIds != null && userIds.size() > 1;
+    }
+
+    public Set<UUID> getUserIds(WebSocketSession session) {
+        Set<UUID> userIds = sessionUsers.get(session);
+        return userIds == null ? Set.of() : Set.copyOf(userIds);
+    }
+
+    public int getUserCount() {
+        return userSessions.size();
+    }
+
+    public int getSessionCount() {
+        return sessionUsers.size();
+    }
+}
@@ -0,0 +1,229 @@
+package com.project;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.TableRecord;
+import org.jooq.impl.DSL;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Queues records in memory and inserts them in groups: a batch is written once it reaches the batch size
+ * or its oldest record has waited the flush interval. Each record's future completes after its batch commits.
+ * With reWriteBatchedInserts=true on DB_URL the JDBC batch becomes multi-row INSERTs. Batches go through the
+ * registered {@link DatabaseBulkhead}, so they share its connection limit with request-path queries.
+ */
+@Slf4j
+public class WriteBehindWriter implements AutoCloseable {
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_FLUSH_MILLIS = 10;
+    private static final int DEFAULT_QUEUE_CAPACITY = 100_000;
+    private static final long DEFAULT_ENQUEUE_TIMEOUT_MILLIS = 1000;
+
+    private final int batchSize;
+    private final long flushNanos;
+    private final long enqueueTimeoutMillis;
+    private final int writerCount;
+    private final Consumer<List<TableRecord<?>>> sink;
+    private final BlockingQueue<PendingRecord> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private final LongAdder flushedBatches = new LongAdder();
+    private final LongAdder flushedRecords = new LongAdder();
+    private final LongAdder failedRecords = new LongAdder();
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    private record PendingRecord(TableRecord<?> record, CompletableFuture<Void> future) {
+    }
+
+    public WriteBehindWriter() {
+        this(EnvConfig.getInt("PERSIST_BATCH_SIZE", DEFAULT_BATCH_SIZE),
+                EnvConfig.getLong("PERSIST_FLUSH_MILLIS", DEFAULT_FLUSH_MILLIS),
+                EnvConfig.getInt("PERSIST_QUEUE_CAPACITY", DEFAULT_QUEUE_CAPACITY),
+                EnvConfig.getLong("PERSIST_ENQUEUE_TIMEOUT_MILLIS", DEFAULT_ENQUEUE_TIMEOUT_MILLIS),
+                EnvConfig.getInt("PERSIST_WRITERS", 1),
+                bulkheadSink(DIContainer.requireSingleton(DatabaseBulkhead.class)));
+    }
+
+    private static Consumer<List<TableRecord<?>>> bulkheadSink(DatabaseBulkhead bulkhead) {
+        return records -> bulkhead.run(dsl -> dsl.transaction(configuration ->
+                DSL.using(configuration).batchInsert(records).execute()));
+    }
+
+    WriteBehindWriter(int batchSize, long flushMillis, int queueCapacity, long enqueueTimeoutMillis,
+                      int writerCount, Consumer<List<TableRecord<?>>> sink) {
+        if (batchSize < 1 || queueCapacity < 1 || writerCount < 1) {
+            throw new IllegalArgumentException("Write-behind batch size, queue capacity and writers must be positive");
+        }
+        this.batchSize = batchSize;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.writerCount = writerCount;
+        this.sink = sink;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    public CompletableFuture<Void> persist(TableRecord<?> record) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("Write-behind writer is closed"));
+            return future;
+        }
+        startWriters();
+
+        PendingRecord pending = new PendingRecord(record, future);
+        try {
+            if (!queue.offer(pending, enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                future.completeExceptionally(new IllegalStateException("Write-behind queue is full"));
+            } else if (closed && queue.remove(pending)) {
+                future.completeExceptionally(new IllegalStateException("Write-behind writer is closed"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void startWriters() {
+        if (started) {
+            return;
+        }
+        synchronized (writers) {
+            if (!started && !closed) {
+                for (int i = 0; i < writerCount; i++) {
+                    writers.add(Thread.ofPlatform().name("write-behind-" + i).daemon(true).start(this::drain));
+                }
+                started = true;
+            }
+        }
+    }
+
+    private void drain() {
+        List<PendingRecord> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                PendingRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fill(batch, System.nanoTime() + flushNanos);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.future().completeExceptionally(e));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fill(List<PendingRecord> batch, long deadline) throws InterruptedException {
+        queue.drainTo(batch, batchSize - batch.size());
+        while (batch.size() < batchSize && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void flush(List<PendingRecord> batch) {
+        List<TableRecord<?>> records = new ArrayList<>(batch.size());
+        batch.forEach(pending -> records.add(pending.record()));
+
+        try {
+            sink.accept(records);
+            flushedBatches.increment();
+            flushedRecords.add(records.size());
+            batch.forEach(pending -> pending.future().complete(null));
+        } catch (DatabaseOverloadedException e) {
+            log.warn("Batch insert of {} records rejected by the database bulkhead", batch.size(), e);
+            batch.forEach(pending -> fail(pending, e));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.getFirst(), e);
+                return;
+            }
+            log.warn("Batch insert of {} records failed, retrying individually", batch.size(), e);
+            for (PendingRecord pending : batch) {
+                try {
+                    sink.accept(List.of(pending.record()));
+                    flushedRecords.increment();
+                    pending.future().complete(null);
+                } catch (RuntimeException recordError) {
+                    fail(pending, recordError);
+                }
+            }
+        }
+    }
+
+    private void fail(PendingRecord pending, RuntimeException e) {
+        failedRecords.increment();
+        pending.future().completeExceptionally(e);
+    }
+
+    public int getQueuedRecords() {
+        return queue.size();
+    }
+
+    public long getFlushedBatches() {
+        return flushedBatches.sum();
+    }
+
+    public long getFlushedRecords() {
+        return flushedRecords.sum();
+    }
+
+    public long getFailedRecords() {
+        return failedRecords.sum();
+    }
+
+    public Map<String, Number> stats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("queuedRecords", getQueuedRecords());
+        stats.put("flushedBatches", getFlushedBatches());
+        stats.put("flushedRecords", getFlushedRecords());
+        stats.put("failedRecords", getFailedRecords());
+        return stats;
+    }
+
+    /**
+     * Stops accepting records and waits, without a timeout, for the writers to flush everything already queued.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (writers) {
+            for (Thread writer : writers) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        PendingRecord pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().completeExceptionally(new IllegalStateException("Write-behind writer is closed"));
+        }
+    }
+}
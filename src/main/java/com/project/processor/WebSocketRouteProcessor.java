@@ -0,0 +1,432 @@
+package com.project.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Generates one {@code GeneratedWebSocketRoutes} module per controller package: controller construction
+ * through their single public constructor, session manager injection and direct handler invokers for every
+ * {@code @Command} method. Dependencies are built with plain constructor calls; only the services the server
+ * registers at startup ({@link #RUNTIME_SINGLETONS}, interfaces and abstract types) are looked up in
+ * {@code DIContainer}. The modules are listed in META-INF/services so that {@code WebSocketAutoRegistrar} can
+ * register them without classpath scanning or reflection. Signatures the runtime would reject, missing
+ * constructors and dependency cycles are reported as compile errors.
+ */
+public class WebSocketRouteProcessor extends AbstractProcessor {
+    private static final String WEB_SOCKET_ROUTE = "com.project.annotation.WebSocketRoute";
+    private static final String COMMAND = "com.project.annotation.Command";
+    private static final String BINARY = "com.project.annotation.Binary";
+    private static final String SESSION_MANAGER = "com.project.WebSocketSessionManager";
+    private static final String MODULE_INTERFACE = "com.project.WebSocketRouteModule";
+    private static final String MODULE_NAME = "GeneratedWebSocketRoutes";
+    private static final Set<String> RUNTIME_SINGLETONS = Set.of(SESSION_MANAGER, "com.project.DatabaseBulkhead",
+            "com.project.WriteBehindWriter", "com.project.ClusterBackplane");
+    private static final Set<String> BINARY_PAYLOAD_TYPES =
+            Set.of("byte[]", "java.nio.file.Path", "java.nio.channels.FileChannel", "java.io.InputStream");
+
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+    private final Set<String> modules = new TreeSet<>();
+
+    private record Handler(ExecutableElement method, String command, boolean binary) {
+    }
+
+    private record Controller(TypeElement type, String route, ExecutableElement constructor,
+                              boolean injectsSession, List<Handler> handlers) {
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.filer = processingEnv.getFiler();
+        this.messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Set.of(WEB_SOCKET_ROUTE, COMMAND, BINARY);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+            return false;
+        }
+
+        TypeElement routeAnnotation = elements.getTypeElement(WEB_SOCKET_ROUTE);
+        TypeElement commandAnnotation = elements.getTypeElement(COMMAND);
+        TypeElement binaryAnnotation = elements.getTypeElement(BINARY);
+        if (routeAnnotation == null || commandAnnotation == null || binaryAnnotation == null) {
+            return false;
+        }
+
+        for (Element method : roundEnv.getElementsAnnotatedWith(commandAnnotation)) {
+            if (annotation(method.getEnclosingElement(), WEB_SOCKET_ROUTE) == null) {
+                error(method, "@Command method " + method.getSimpleName()
+                        + " must be declared in a class annotated with @WebSocketRoute");
+            }
+        }
+        for (Element method : roundEnv.getElementsAnnotatedWith(binaryAnnotation)) {
+            if (annotation(method, COMMAND) == null) {
+                error(method, "@Binary method " + method.getSimpleName() + " must also be annotated with @Command");
+            }
+        }
+
+        Map<String, List<Controller>> controllersByPackage = new TreeMap<>();
+        Map<String, Element> commandsByRoute = new HashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(routeAnnotation)) {
+            Controller controller = controller(element, commandsByRoute);
+            if (controller != null) {
+                String packageName = elements.getPackageOf(controller.type()).getQualifiedName().toString();
+                controllersByPackage.computeIfAbsent(packageName, key -> new ArrayList<>()).add(controller);
+            }
+        }
+
+        controllersByPackage.forEach(this::writeModule);
+        return false;
+    }
+
+    private Controller controller(Element element, Map<String, Element> commandsByRoute) {
+        if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(element, "@WebSocketRoute must annotate a concrete class");
+            return null;
+        }
+        TypeElement type = (TypeElement) element;
+        if (!isAccessible(type)) {
+            error(type, "Controller " + type.getQualifiedName() + " must not be private or a non-static inner class");
+            return null;
+        }
+
+        ExecutableElement constructor = injectableConstructor(type);
+        if (constructor == null) {
+            error(type, "Controller " + type.getQualifiedName() + " must declare exactly one public constructor");
+            return null;
+        }
+
+        String route = annotationValue(annotation(type, WEB_SOCKET_ROUTE), "route");
+        List<Handler> handlers = new ArrayList<>();
+        boolean valid = true;
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            AnnotationMirror command = annotation(method, COMMAND);
+            if (command == null) {
+                continue;
+            }
+            Handler handler = new Handler(method, annotationValue(command, "value"), annotation(method, BINARY) != null);
+            Element previous = commandsByRoute.putIfAbsent(route + " " + handler.command(), method);
+            if (previous != null) {
+                error(method, "Command \"" + handler.command() + "\" is already handled on route " + route
+                        + " by " + previous.getEnclosingElement().getSimpleName() + "." + previous.getSimpleName());
+                valid = false;
+            }
+            valid &= validateHandler(handler);
+            handlers.add(handler);
+        }
+
+        return valid ? new Controller(type, route, constructor, injectsSession(type), handlers) : null;
+    }
+
+    private boolean validateHandler(Handler handler) {
+        ExecutableElement method = handler.method();
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+            error(method, "@Command method " + method.getSimpleName() + " must be a non-private instance method");
+            return false;
+        }
+
+        List<? extends VariableElement> parameters = method.getParameters();
+        if (handler.binary()) {
+            if (parameters.size() != 2) {
+                error(method, "@Binary method must have exactly 2 parameters: Object and file payload");
+                return false;
+            }
+            if (!BINARY_PAYLOAD_TYPES.contains(typeName(parameters.get(1).asType()))) {
+                error(parameters.get(1),
+                        "Second parameter of @Binary method must be byte[], Path, FileChannel or InputStream");
+                return false;
+            }
+        } else if (parameters.size() != 1) {
+            error(method, "@Command method must have exactly 1 parameter");
+            return false;
+        }
+        return true;
+    }
+
+    private ExecutableElement injectableConstructor(TypeElement type) {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+                .filter(constructor -> constructor.getModifiers().contains(Modifier.PUBLIC))
+                .toList();
+        return constructors.size() == 1 ? constructors.getFirst() : null;
+    }
+
+    private boolean injectsSession(TypeElement type) {
+        TypeElement sessionManager = elements.getTypeElement(SESSION_MANAGER);
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (method.getSimpleName().contentEquals("setSession")
+                    && method.getModifiers().contains(Modifier.PUBLIC)
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && method.getParameters().size() == 1
+                    && sessionManager != null
+                    && types.isSameType(method.getParameters().getFirst().asType(), sessionManager.asType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeModule(String packageName, List<Controller> controllers) {
+        String moduleName = packageName.isEmpty() ? MODULE_NAME : packageName + "." + MODULE_NAME;
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < controllers.size(); i++) {
+            Controller controller = controllers.get(i);
+            String variable = "controller" + i;
+            String instance = instance(controller.type(), controller.constructor(), new ArrayDeque<>());
+            if (instance == null) {
+                return;
+            }
+
+            body.append("        ").append(controller.type().getQualifiedName()).append(' ').append(variable)
+                    .append(" = ").append(instance).append(";\n");
+            if (controller.injectsSession()) {
+                body.append("        ").append(variable).append(".setSession(")
+                        .append(provide(elements.getTypeElement(SESSION_MANAGER).asType(), controller.type(), new ArrayDeque<>()))
+                        .append(");\n");
+            }
+            for (Handler handler : controller.handlers()) {
+                appendHandler(body, controller, variable, handler);
+            }
+        }
+
+        try {
+            JavaFileObject file = filer.createSourceFile(moduleName,
+                    controllers.stream().map(Controller::type).toArray(Element[]::new));
+            try (Writer writer = file.openWriter()) {
+                if (!packageName.isEmpty()) {
+                    writer.write("package " + packageName + ";\n\n");
+                }
+                writer.write("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")\n");
+                writer.write("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+                writer.write("public final class " + MODULE_NAME + " implements " + MODULE_INTERFACE + " {\n");
+                writer.write("    @Override\n");
+                writer.write("    public String getPackageName() {\n");
+                writer.write("        return \"" + packageName + "\";\n");
+                writer.write("    }\n\n");
+                writer.write("    @Override\n");
+                writer.write("    public java.util.Set<Class<?>> getControllerClasses() {\n");
+                writer.write("        return java.util.Set.of(" + controllers.stream()
+                        .map(controller -> controller.type().getQualifiedName() + ".class")
+                        .collect(Collectors.joining(", ")) + ");\n");
+                writer.write("    }\n\n");
+                writer.write("    @Override\n");
+                writer.write("    public void register() {\n");
+                writer.write(body.toString());
+                writer.write("    }\n");
+                writer.write("}\n");
+            }
+            modules.add(moduleName);
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Failed to write " + moduleName + ": " + e.getMessage());
+        }
+    }
+
+    private void appendHandler(StringBuilder body, Controller controller, String variable, Handler handler) {
+        List<? extends VariableElement> parameters = handler.method().getParameters();
+        TypeMirror parameterType = parameters.getFirst().asType();
+        String registration = handler.binary() ? "registerBinaryHandler" : "registerHandler";
+
+        body.append("        com.project.WebSocketRouteRegistry.").append(registration).append('(')
+                .append(literal(controller.route())).append(", ").append(literal(handler.command())).append(", ")
+                .append(variable).append(", ").append(typeName(parameterType)).append(".class,");
+        if (handler.binary()) {
+            TypeMirror payloadType = parameters.get(1).asType();
+            body.append(' ').append(typeName(payloadType)).append(".class,\n                (metadata, payload) -> ")
+                    .append(variable).append('.').append(handler.method().getSimpleName())
+                    .append('(').append(cast(parameterType, "metadata")).append(", ")
+                    .append(cast(payloadType, "payload")).append("));\n");
+        } else {
+            body.append("\n                message -> ")
+                    .append(variable).append('.').append(handler.method().getSimpleName())
+                    .append('(').append(cast(parameterType, "message")).append("));\n");
+        }
+    }
+
+    /**
+     * Expression that builds {@code type} through its constructor, resolving each parameter with
+     * {@link #provide}; null after reporting an error.
+     */
+    private String instance(TypeElement type, ExecutableElement constructor, Deque<TypeElement> path) {
+        path.push(type);
+        List<String> arguments = new ArrayList<>();
+        for (VariableElement parameter : constructor.getParameters()) {
+            String argument = provide(parameter.asType(), parameter, path);
+            if (argument == null) {
+                path.pop();
+                return null;
+            }
+            arguments.add(argument);
+        }
+        path.pop();
+
+        String name = type.getQualifiedName().toString();
+        return "com.project.DIContainer.createOrGetInstance(" + name + ".class, () -> new " + name
+                + "(" + String.join(", ", arguments) + "))";
+    }
+
+    private String provide(TypeMirror dependency, Element site, Deque<TypeElement> path) {
+        if (dependency.getKind() != TypeKind.DECLARED) {
+            error(site, "Cannot inject " + dependency + ": only class and interface types can be injected");
+            return null;
+        }
+
+        TypeElement type = (TypeElement) ((DeclaredType) dependency).asElement();
+        String name = type.getQualifiedName().toString();
+        if (!isAccessible(type)) {
+            error(site, "Cannot inject " + name + ": the type is not accessible");
+            return null;
+        }
+        if (RUNTIME_SINGLETONS.contains(name) || type.getKind() == ElementKind.INTERFACE
+                || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return "com.project.DIContainer.requireSingleton(" + name + ".class)";
+        }
+        if (path.contains(type)) {
+            error(site, "Dependency cycle through " + name);
+            return null;
+        }
+
+        ExecutableElement constructor = injectableConstructor(type);
+        if (constructor == null) {
+            error(site, "Cannot inject " + name + ": it must declare exactly one public constructor");
+            return null;
+        }
+        return instance(type, constructor, path);
+    }
+
+    private boolean isAccessible(TypeElement type) {
+        Element current = type;
+        while (current instanceof TypeElement nested) {
+            if (nested.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (nested.getNestingKind() == NestingKind.MEMBER && !nested.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+            if (nested.getNestingKind() == NestingKind.LOCAL || nested.getNestingKind() == NestingKind.ANONYMOUS) {
+                return false;
+            }
+            current = nested.getEnclosingElement();
+        }
+        return current instanceof PackageElement;
+    }
+
+    private String typeName(TypeMirror type) {
+        return types.erasure(type).toString();
+    }
+
+    private String cast(TypeMirror type, String variable) {
+        String target = type.getKind().isPrimitive()
+                ? types.boxedClass(types.getPrimitiveType(type.getKind())).getQualifiedName().toString()
+                : typeName(type);
+        return "(" + target + ") " + variable;
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> literal.append("\\\"");
+                case '\\' -> literal.append("\\\\");
+                case '\n' -> literal.append("\\n");
+                case '\r' -> literal.append("\\r");
+                case '\t' -> literal.append("\\t");
+                default -> literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private AnnotationMirror annotation(Element element, String annotationType) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(annotationType)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private String annotationValue(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return String.valueOf(entry.getValue().getValue());
+            }
+        }
+        return "";
+    }
+
+    private void writeServiceFile() {
+        if (modules.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "",
+                    "META-INF/services/" + MODULE_INTERFACE);
+            try (Writer writer = file.openWriter()) {
+                for (String module : modules) {
+                    writer.write(module + "\n");
+                }
+            }
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Failed to write the route module service file: " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}